@@ -4,5 +4,130 @@ import java.nio.file.Path;
 
 public record Config(
         Path basePath,
-        long flushThresholdBytes) {
+        long flushThresholdBytes,
+        Durability durability,
+        long writeStallTimeoutMillis,
+        Compression compression,
+        int bloomBitsPerKey,
+        ChecksumVerification checksumVerification,
+        long valueSeparationThresholdBytes,
+        boolean hashIndex,
+        boolean learnedIndex) {
+
+    public static final long DEFAULT_WRITE_STALL_TIMEOUT_MILLIS = 1000;
+    // about 1% of false positives, 0 disables filters
+    public static final int DEFAULT_BLOOM_BITS_PER_KEY = 10;
+    // values of at least this size are kept in value log instead of sstables, 0 keeps all values in sstables
+    public static final long DEFAULT_VALUE_SEPARATION_THRESHOLD_BYTES = 0;
+    // table from key hash to entry in every sstable for point lookups, it takes 22-43 bytes per key
+    public static final boolean DEFAULT_HASH_INDEX = false;
+    // piecewise linear model of key positions in every sstable, it pays off for keys of near-uniform distribution
+    public static final boolean DEFAULT_LEARNED_INDEX = false;
+    // checksums are always written, verification reads every block once in background on open, so it is opt-in
+    public static final ChecksumVerification DEFAULT_CHECKSUM_VERIFICATION = ChecksumVerification.OFF;
+
+    public Config(Path basePath, long flushThresholdBytes) {
+        this(basePath, flushThresholdBytes, Durability.NONE, DEFAULT_WRITE_STALL_TIMEOUT_MILLIS, Compression.NONE,
+                DEFAULT_BLOOM_BITS_PER_KEY, DEFAULT_CHECKSUM_VERIFICATION, DEFAULT_VALUE_SEPARATION_THRESHOLD_BYTES,
+                DEFAULT_HASH_INDEX, DEFAULT_LEARNED_INDEX);
+    }
+
+    // copies with one setting changed, the rest stays as is:
+    // new Config(basePath, flushThresholdBytes).withCompression(Compression.LZ4).withHashIndex(true)
+
+    public Config withDurability(Durability durability) {
+        return new Config(basePath, flushThresholdBytes, durability, writeStallTimeoutMillis, compression,
+                bloomBitsPerKey, checksumVerification, valueSeparationThresholdBytes, hashIndex, learnedIndex);
+    }
+
+    public Config withWriteStallTimeoutMillis(long writeStallTimeoutMillis) {
+        return new Config(basePath, flushThresholdBytes, durability, writeStallTimeoutMillis, compression,
+                bloomBitsPerKey, checksumVerification, valueSeparationThresholdBytes, hashIndex, learnedIndex);
+    }
+
+    public Config withCompression(Compression compression) {
+        return new Config(basePath, flushThresholdBytes, durability, writeStallTimeoutMillis, compression,
+                bloomBitsPerKey, checksumVerification, valueSeparationThresholdBytes, hashIndex, learnedIndex);
+    }
+
+    public Config withBloomBitsPerKey(int bloomBitsPerKey) {
+        return new Config(basePath, flushThresholdBytes, durability, writeStallTimeoutMillis, compression,
+                bloomBitsPerKey, checksumVerification, valueSeparationThresholdBytes, hashIndex, learnedIndex);
+    }
+
+    public Config withChecksumVerification(ChecksumVerification checksumVerification) {
+        return new Config(basePath, flushThresholdBytes, durability, writeStallTimeoutMillis, compression,
+                bloomBitsPerKey, checksumVerification, valueSeparationThresholdBytes, hashIndex, learnedIndex);
+    }
+
+    public Config withValueSeparationThresholdBytes(long valueSeparationThresholdBytes) {
+        return new Config(basePath, flushThresholdBytes, durability, writeStallTimeoutMillis, compression,
+                bloomBitsPerKey, checksumVerification, valueSeparationThresholdBytes, hashIndex, learnedIndex);
+    }
+
+    public Config withHashIndex(boolean hashIndex) {
+        return new Config(basePath, flushThresholdBytes, durability, writeStallTimeoutMillis, compression,
+                bloomBitsPerKey, checksumVerification, valueSeparationThresholdBytes, hashIndex, learnedIndex);
+    }
+
+    public Config withLearnedIndex(boolean learnedIndex) {
+        return new Config(basePath, flushThresholdBytes, durability, writeStallTimeoutMillis, compression,
+                bloomBitsPerKey, checksumVerification, valueSeparationThresholdBytes, hashIndex, learnedIndex);
+    }
+
+    /**
+     * Defines when write-ahead log records reach the disk.
+     */
+    public enum Durability {
+        /**
+         * Records are written to the log, but never forced (survives process crash only).
+         */
+        NONE,
+        /**
+         * Concurrent records are grouped and forced once per batch before upsert returns.
+         */
+        BATCH,
+        /**
+         * Every record is written and forced on its own.
+         */
+        OPERATION
+    }
+
+    /**
+     * Defines when sstable block checksums are verified on read.
+     * Unless verification is off, index and footer are verified on open
+     * and all blocks are verified once in background after dao is opened.
+     */
+    public enum ChecksumVerification {
+        /**
+         * Checksums are written, but never verified.
+         */
+        OFF,
+        /**
+         * Block is verified when it is read for the first time.
+         */
+        FIRST_TOUCH,
+        /**
+         * Block is verified on every read.
+         */
+        ALWAYS
+    }
+
+    /**
+     * Defines how sstable blocks are compressed on disk.
+     */
+    public enum Compression {
+        /**
+         * Blocks are stored as is and read without copying.
+         */
+        NONE,
+        /**
+         * Fast LZ4 block format, good for hot data.
+         */
+        LZ4,
+        /**
+         * Deflate, slower but denser, good for cold data.
+         */
+        DEFLATE
+    }
 }
@@ -0,0 +1,60 @@
+package ru.mail.polis;
+
+import java.util.Iterator;
+
+/**
+ * Forward-only view of ordered entries which, unlike iterator of entries, does not need an object per entry.
+ * Key and value of the current entry are valid only until the next call of {@link #next()},
+ * they have to be copied to be kept longer.
+ */
+public interface Cursor<D> {
+
+    /**
+     * Moves to the next entry, it has to be called before access to the first one.
+     * @return false if there are no more entries
+     */
+    boolean next();
+
+    /**
+     * Returns key of the current entry.
+     * @return key, valid until the next call of {@link #next()}
+     */
+    D key();
+
+    /**
+     * Returns value of the current entry, cursors of Dao never stop at tombstones.
+     * @return value, valid until the next call of {@link #next()}
+     */
+    D value();
+
+    /**
+     * Adapts ordered iterator of entries.
+     * @param iterator entries
+     * @return cursor over the same entries
+     */
+    static <D> Cursor<D> of(Iterator<? extends Entry<D>> iterator) {
+        return new Cursor<>() {
+            private Entry<D> current;
+
+            @Override
+            public boolean next() {
+                if (!iterator.hasNext()) {
+                    current = null;
+                    return false;
+                }
+                current = iterator.next();
+                return true;
+            }
+
+            @Override
+            public D key() {
+                return current.key();
+            }
+
+            @Override
+            public D value() {
+                return current.value();
+            }
+        };
+    }
+}
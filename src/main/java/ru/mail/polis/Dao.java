@@ -3,6 +3,10 @@ package ru.mail.polis;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface Dao<D, E extends Entry<D>> extends Closeable {
 
@@ -14,6 +18,33 @@ public interface Dao<D, E extends Entry<D>> extends Closeable {
      */
     Iterator<E> get(D from, D to) throws IOException;
 
+    /**
+     * Returns ordered cursor over entries with keys between from (inclusive) and to (exclusive).
+     * Note: default implementation still creates entries of {@link #get(Object, Object)}.
+     * @param from lower bound of range (inclusive)
+     * @param to upper bound of range (exclusive)
+     * @return cursor over entries [from;to)
+     */
+    default Cursor<D> cursor(D from, D to) throws IOException {
+        return Cursor.of(get(from, to));
+    }
+
+    /**
+     * Returns ordered stream of entries with keys between from (inclusive) and to (exclusive).
+     * Parallel stream is processed on common ForkJoinPool. Note: default implementation splits
+     * the single iterator of {@link #get(Object, Object)} into batches, so reading stays sequential.
+     * @param from lower bound of range (inclusive)
+     * @param to upper bound of range (exclusive)
+     * @return entries [from;to)
+     */
+    default Stream<E> stream(D from, D to) throws IOException {
+        Spliterator<E> spliterator = Spliterators.spliteratorUnknownSize(
+                get(from, to),
+                Spliterator.ORDERED | Spliterator.NONNULL
+        );
+        return StreamSupport.stream(spliterator, false);
+    }
+
     /**
      * Returns entry by key. Note: default implementation is far from optimal.
      * @param key entry`s key
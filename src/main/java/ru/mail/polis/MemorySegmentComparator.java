@@ -0,0 +1,108 @@
+package ru.mail.polis;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+import java.nio.ByteOrder;
+import java.util.Comparator;
+
+/**
+ * Lexicographic order of unsigned bytes, a segment goes before the longer ones it is a prefix of.
+ * It agrees with order of UTF-8 encoded strings by code points.
+ * Segments of up to 16 bytes are compared 8 bytes at a time, longer ones go through vectorized mismatch.
+ */
+public final class MemorySegmentComparator implements Comparator<MemorySegment> {
+
+    public static final MemorySegmentComparator INSTANCE = new MemorySegmentComparator();
+
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private MemorySegmentComparator() {
+    }
+
+    @Override
+    public int compare(MemorySegment m1, MemorySegment m2) {
+        long size1 = m1.byteSize();
+        long size2 = m2.byteSize();
+        long size = Math.min(size1, size2);
+
+        if (size < Long.BYTES) {
+            for (long offset = 0; offset < size; offset++) {
+                int result = Byte.compareUnsigned(
+                        MemoryAccess.getByteAtOffset(m1, offset),
+                        MemoryAccess.getByteAtOffset(m2, offset)
+                );
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Long.compare(size1, size2);
+        }
+
+        // keys up to 16 bytes are compared in two reads, the second one overlaps with already equal bytes
+        if (size <= Long.BYTES * 2) {
+            int result = compareWords(m1, m2, 0);
+            if (result == 0 && size > Long.BYTES) {
+                result = compareWords(m1, m2, size - Long.BYTES);
+            }
+            return result != 0 ? result : Long.compare(size1, size2);
+        }
+
+        // longer keys usually share a prefix, vectorized mismatch finds its end faster than reading word by word
+        long mismatch = m1.mismatch(m2);
+        if (mismatch == -1) {
+            return 0;
+        }
+        if (mismatch == size) {
+            return Long.compare(size1, size2);
+        }
+        return Byte.compareUnsigned(
+                MemoryAccess.getByteAtOffset(m1, mismatch),
+                MemoryAccess.getByteAtOffset(m2, mismatch)
+        );
+    }
+
+    /**
+     * Compares ranges of segments in the same order without creating slices of them.
+     * Words are read in place, so it is meant for short keys stored inside larger segments.
+     */
+    public static int compare(MemorySegment m1, long offset1, long size1,
+                              MemorySegment m2, long offset2, long size2) {
+        long size = Math.min(size1, size2);
+        long offset = 0;
+        for (; offset + Long.BYTES <= size; offset += Long.BYTES) {
+            int result = compareWords(
+                    MemoryAccess.getLongAtOffset(m1, offset1 + offset),
+                    MemoryAccess.getLongAtOffset(m2, offset2 + offset)
+            );
+            if (result != 0) {
+                return result;
+            }
+        }
+        for (; offset < size; offset++) {
+            int result = Byte.compareUnsigned(
+                    MemoryAccess.getByteAtOffset(m1, offset1 + offset),
+                    MemoryAccess.getByteAtOffset(m2, offset2 + offset)
+            );
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Long.compare(size1, size2);
+    }
+
+    private static int compareWords(MemorySegment m1, MemorySegment m2, long offset) {
+        return compareWords(MemoryAccess.getLongAtOffset(m1, offset), MemoryAccess.getLongAtOffset(m2, offset));
+    }
+
+    private static int compareWords(long word1, long word2) {
+        if (word1 == word2) {
+            return 0;
+        }
+        // words are read in native order, the first byte has to be the most significant one
+        if (LITTLE_ENDIAN) {
+            return Long.compareUnsigned(Long.reverseBytes(word1), Long.reverseBytes(word2));
+        }
+        return Long.compareUnsigned(word1, word2);
+    }
+}
@@ -2,6 +2,7 @@ package ru.mail.polis.alinashestakova;
 
 import jdk.incubator.foreign.MemorySegment;
 import ru.mail.polis.BaseEntry;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.util.Comparator;
 
@@ -4,6 +4,7 @@ import jdk.incubator.foreign.MemorySegment;
 import ru.mail.polis.BaseEntry;
 import ru.mail.polis.Config;
 import ru.mail.polis.Dao;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -5,6 +5,7 @@ import jdk.incubator.foreign.MemorySegment;
 import jdk.incubator.foreign.ResourceScope;
 import ru.mail.polis.BaseEntry;
 import ru.mail.polis.Config;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -0,0 +1,67 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+import java.util.Arrays;
+
+// growable heap buffer holding one sstable block: either the one being built by writer
+// or the one decompressed by reader, the same instance is reused for the next block
+class BlockBuffer {
+
+    private byte[] bytes = new byte[BlockSSTable.BLOCK_SIZE * 2];
+    private MemorySegment segment = MemorySegment.ofArray(bytes);
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    // view is valid only until the buffer is reused
+    MemorySegment segment() {
+        return segment.asSlice(0, size);
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    void writeInt(int value) {
+        ensureCapacity(size + Integer.BYTES);
+        MemoryAccess.setIntAtOffset(segment, size, value);
+        size += Integer.BYTES;
+    }
+
+    void writeVarLong(long value) {
+        ensureCapacity(size + VarInts.MAX_SIZE);
+        size += VarInts.write(segment, size, value);
+    }
+
+    void write(MemorySegment source) {
+        ensureCapacity(size + source.byteSize());
+        segment.asSlice(size, source.byteSize()).copyFrom(source);
+        size += (int) source.byteSize();
+    }
+
+    MemorySegment decompress(BlockCodec codec, MemorySegment source, int rawSize) {
+        ensureCapacity(rawSize);
+        codec.decompress(source, bytes, rawSize);
+        size = rawSize;
+        return segment();
+    }
+
+    private void ensureCapacity(long capacity) {
+        if (capacity <= bytes.length) {
+            return;
+        }
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Block is too big: " + capacity);
+        }
+        bytes = Arrays.copyOf(bytes, (int) Math.min(Math.max(capacity, bytes.length * 2L), Integer.MAX_VALUE - 8));
+        segment = MemorySegment.ofArray(bytes);
+    }
+}
@@ -0,0 +1,42 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.Config;
+
+// compresses whole sstable blocks, codec id is stored in front of every block
+// compressing instance is owned by one writer, decompression is thread-safe
+interface BlockCodec extends AutoCloseable {
+
+    byte RAW = 0;
+    byte LZ4 = 1;
+    byte DEFLATE = 2;
+
+    byte id();
+
+    // returns compressed size or -1 if the result does not fit into dst
+    int compress(byte[] src, int srcSize, byte[] dst);
+
+    void decompress(MemorySegment src, byte[] dst, int dstSize);
+
+    @Override
+    default void close() {
+        // nothing to release by default
+    }
+
+    // null means blocks are stored as is
+    static BlockCodec create(Config.Compression compression) {
+        return switch (compression) {
+            case NONE -> null;
+            case LZ4 -> new Lz4Codec();
+            case DEFLATE -> new DeflateCodec();
+        };
+    }
+
+    static BlockCodec forId(byte id) {
+        return switch (id) {
+            case LZ4 -> Lz4Codec.DECODER;
+            case DEFLATE -> DeflateCodec.DECODER;
+            default -> throw new IllegalStateException("Unknown block codec: " + id);
+        };
+    }
+}
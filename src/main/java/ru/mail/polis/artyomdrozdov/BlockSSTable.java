@@ -0,0 +1,556 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+// file structure:
+// (block...)(blockIndex)(int indexEntryPosition...)(bloomFilter)(fences)(valueLogReferences)(hashIndex)(footer)
+// footer has fixed size, so it is found from the end of file:
+// (entryCount)(hasTombstone)(blockCount)(blockIndexOffset)(indexPositionsOffset)(rawBlocksSize)
+// (bloomFilterOffset)(fencesOffset)(blockIndexChecksum)(metadataChecksum)(valueLogReferencesOffset)
+// (hashIndexOffset)(footerChecksum)(formatVersion)(magic)
+// the last two fields are the common trailer of all versions (see SSTable)
+// stored block:
+// (byte codecId)(rawSize)(int checksum)(payload), payload is either raw block or its compressed form
+// raw block:
+// (entry...)(int restartPosition...)(int restartCount), restart positions are offsets in block
+// entry:
+// (sharedKeySize)(unsharedKeySize)(unsharedKey)(valueSize + 2)(value) for value stored in place
+// (sharedKeySize)(unsharedKeySize)(unsharedKey)(1)(logId)(offset)(valueSize) for value stored in value log
+// (sharedKeySize)(unsharedKeySize)(unsharedKey)(0) for tombstone
+// key shares its prefix with the previous one, every RESTART_INTERVAL-th entry (and the first one) stores full key
+// block index entry:
+// (blockOffset)(firstKeySize)(firstKey)
+// index entry positions are relative to the block index start
+// all sizes and offsets except fixed-width int and footer fields are varints (see VarInts)
+// bloom filter is optional (see BloomFilter), its offset is 0 when it is absent
+// fences:
+// (minKeySize)(minKey)(maxKeySize)(maxKey), absent in empty sstable
+// value log references:
+// (logCount)((logId)(referencedBytes)...), absent if no value is stored in value log
+// hash index is optional (see HashIndex), point lookups use it instead of block index search and bloom filter
+// fences are copied to heap on open, so that files which can not contain a key are skipped without touching them
+// first keys of blocks are searched through heap EytzingerIndex, prefix shared by fences is skipped in its nodes
+//
+// checksums are CRC32C: block checksum covers its payload, block index checksum covers the block index,
+// metadata checksum covers everything from index entry positions up to the footer
+// footer checksum covers the footer fields before it, so that offsets are not trusted before they are verified
+//
+// raw blocks are read right from the mapped file, compressed ones are decompressed into reusable buffer,
+// so entries of compressed blocks are copied before they are returned
+//
+// older versions have shorter footers: version 10 has no hashIndexOffset, version 9 has no
+// valueLogReferencesOffset either and stores its values as (valueSize + 1)(value) without value log pointers
+class BlockSSTable implements SSTable {
+
+    static final long VERSION = 11;
+    static final long INLINE_VALUES_VERSION = 9;
+    static final long VALUE_LOG_VERSION = 10;
+    static final int BLOCK_SIZE = 4 * 1024;
+    static final int RESTART_INTERVAL = 16;
+    static final long TOMBSTONE = 0;
+    static final long VALUE_POINTER = 1;
+    static final long VALUE_SIZE_SHIFT = 2;
+    private static final int CHECKSUM_CHUNK_SIZE = 64 * 1024;
+
+    // point lookups come from many threads, each of them decompresses into its own buffer
+    private static final ThreadLocal<BlockBuffer> LOOKUP_BUFFERS = ThreadLocal.withInitial(BlockBuffer::new);
+    private static final ThreadLocal<byte[]> CHECKSUM_BUFFERS =
+            ThreadLocal.withInitial(() -> new byte[CHECKSUM_CHUNK_SIZE]);
+
+    private final MemorySegment sstable;
+    private final long version;
+    private final long valueSizeShift;
+    private final ValueLog valueLog;
+    private final Map<Long, Long> valueLogReferences;
+    private final Config.ChecksumVerification verification;
+    private final long entryCount;
+    private final boolean hasTombstone;
+    private final long blockCount;
+    private final long blockIndexOffset;
+    private final long indexPositionsOffset;
+    private final long rawBlocksSize;
+    private final EytzingerIndex blockIndex;
+    private final BloomFilter bloomFilter;
+    private final HashIndex hashIndex;
+    private final MemorySegment minKey;
+    private final MemorySegment maxKey;
+    // bit per block, used only in FIRST_TOUCH mode
+    private final AtomicLongArray verifiedBlocks;
+    private final LongAdder decompressionNanos = new LongAdder();
+
+    private BlockSSTable(
+            MemorySegment sstable,
+            long version,
+            Config.ChecksumVerification verification,
+            ValueLog valueLog) {
+        this.sstable = sstable;
+        this.version = version;
+        this.valueSizeShift = version == INLINE_VALUES_VERSION ? 1 : VALUE_SIZE_SHIFT;
+        this.valueLog = valueLog;
+        this.verification = verification;
+
+        long footerOffset = sstable.byteSize() - footerSize(version);
+        this.entryCount = MemoryAccess.getLongAtOffset(sstable, footerOffset);
+        this.hasTombstone = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES) != 0;
+        this.blockCount = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 2);
+        this.blockIndexOffset = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 3);
+        this.indexPositionsOffset = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 4);
+        this.rawBlocksSize = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 5);
+        long bloomFilterOffset = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 6);
+        long fencesOffset = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 7);
+
+        this.bloomFilter = bloomFilterOffset == 0 ? null : BloomFilter.open(sstable, bloomFilterOffset);
+        if (fencesOffset == 0) {
+            this.minKey = null;
+            this.maxKey = null;
+        } else {
+            long minKeySize = VarInts.read(sstable, fencesOffset);
+            long minKeyOffset = fencesOffset + VarInts.size(minKeySize);
+            long maxKeySizeOffset = minKeyOffset + minKeySize;
+            long maxKeySize = VarInts.read(sstable, maxKeySizeOffset);
+            long maxKeyOffset = maxKeySizeOffset + VarInts.size(maxKeySize);
+            this.minKey = MemorySegment.ofArray(sstable.asSlice(minKeyOffset, minKeySize).toByteArray());
+            this.maxKey = MemorySegment.ofArray(sstable.asSlice(maxKeyOffset, maxKeySize).toByteArray());
+        }
+        this.blockIndex = new EytzingerIndex((int) blockCount, commonPrefix(minKey, maxKey), this::firstKey);
+        long valueLogReferencesOffset = version == INLINE_VALUES_VERSION
+                ? 0
+                : MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 10);
+        this.valueLogReferences = valueLogReferencesOffset == 0
+                ? Map.of()
+                : readValueLogReferences(sstable, valueLogReferencesOffset);
+        long hashIndexOffset = version < VERSION
+                ? 0
+                : MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 11);
+        this.hashIndex = hashIndexOffset == 0 ? null : HashIndex.open(sstable, hashIndexOffset);
+        this.verifiedBlocks = verification == Config.ChecksumVerification.FIRST_TOUCH
+                ? new AtomicLongArray((int) ((blockCount + Long.SIZE - 1) / Long.SIZE))
+                : null;
+    }
+
+    static SSTable open(MemorySegment sstable, Config.ChecksumVerification verification, ValueLog valueLog) {
+        long version = MemoryAccess.getLongAtOffset(sstable, sstable.byteSize() - TRAILER_SIZE);
+        if (sstable.byteSize() < footerSize(version)) {
+            throw new IllegalStateException("Corrupted sstable: file is too short");
+        }
+        if (verification != Config.ChecksumVerification.OFF) {
+            verifyMetadata(sstable, version);
+        }
+        return new BlockSSTable(sstable, version, verification, valueLog);
+    }
+
+    // footer checksum is the last field before the trailer
+    private static int footerSize(long version) {
+        int fieldCount;
+        if (version == INLINE_VALUES_VERSION) {
+            fieldCount = 11;
+        } else if (version == VALUE_LOG_VERSION) {
+            fieldCount = 12;
+        } else {
+            fieldCount = 13;
+        }
+        return Long.BYTES * fieldCount + TRAILER_SIZE;
+    }
+
+    // all keys between the two share it
+    private static MemorySegment commonPrefix(MemorySegment minKey, MemorySegment maxKey) {
+        if (minKey == null) {
+            return MemorySegment.ofArray(new byte[0]);
+        }
+        long mismatch = minKey.mismatch(maxKey);
+        return mismatch == -1 ? minKey : minKey.asSlice(0, mismatch);
+    }
+
+    private static Map<Long, Long> readValueLogReferences(MemorySegment sstable, long offset) {
+        long logCount = VarInts.read(sstable, offset);
+        long position = offset + VarInts.size(logCount);
+        Map<Long, Long> references = new HashMap<>();
+        for (long i = 0; i < logCount; i++) {
+            long logId = VarInts.read(sstable, position);
+            position += VarInts.size(logId);
+            long referencedBytes = VarInts.read(sstable, position);
+            position += VarInts.size(referencedBytes);
+            references.put(logId, referencedBytes);
+        }
+        return references;
+    }
+
+    private static void verifyMetadata(MemorySegment sstable, long version) {
+        long footerOffset = sstable.byteSize() - footerSize(version);
+        long checksumOffset = sstable.byteSize() - TRAILER_SIZE - Long.BYTES;
+        long footerChecksum = MemoryAccess.getLongAtOffset(sstable, checksumOffset);
+        if (checksum(sstable.asSlice(footerOffset, checksumOffset - footerOffset)) != footerChecksum) {
+            throw new IllegalStateException("Corrupted sstable: footer checksum mismatch");
+        }
+
+        long blockIndexOffset = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 3);
+        long indexPositionsOffset = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 4);
+        long blockIndexChecksum = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 8);
+        long metadataChecksum = MemoryAccess.getLongAtOffset(sstable, footerOffset + Long.BYTES * 9);
+        MemorySegment blockIndex = sstable.asSlice(blockIndexOffset, indexPositionsOffset - blockIndexOffset);
+        if (checksum(blockIndex) != blockIndexChecksum) {
+            throw new IllegalStateException("Corrupted sstable: block index checksum mismatch");
+        }
+        MemorySegment metadata = sstable.asSlice(indexPositionsOffset, footerOffset - indexPositionsOffset);
+        if (checksum(metadata) != metadataChecksum) {
+            throw new IllegalStateException("Corrupted sstable: metadata checksum mismatch");
+        }
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public Map<Long, Long> valueLogReferences() {
+        return valueLogReferences;
+    }
+
+    // reads and verifies every block, blocks are remembered as verified for FIRST_TOUCH mode
+    @Override
+    public void verify() {
+        for (long block = 0; block < blockCount; block++) {
+            verifyBlock(block);
+        }
+    }
+
+    private void verifyBlock(long block) {
+        long offset = blockOffset(block);
+        long end = block + 1 == blockCount ? blockIndexOffset : blockOffset(block + 1);
+        long checksumOffset = offset + Byte.BYTES + VarInts.size(VarInts.read(sstable, offset + Byte.BYTES));
+        long payloadOffset = checksumOffset + Integer.BYTES;
+        int expected = MemoryAccess.getIntAtOffset(sstable, checksumOffset);
+        if ((int) checksum(sstable.asSlice(payloadOffset, end - payloadOffset)) != expected) {
+            throw new IllegalStateException("Corrupted sstable: checksum mismatch in block " + block);
+        }
+        if (verifiedBlocks != null) {
+            int word = (int) (block >>> 6);
+            long bit = 1L << block;
+            verifiedBlocks.getAndAccumulate(word, bit, (current, mask) -> current | mask);
+        }
+    }
+
+    private boolean needsVerification(long block) {
+        return switch (verification) {
+            case OFF -> false;
+            case ALWAYS -> true;
+            case FIRST_TOUCH -> (verifiedBlocks.get((int) (block >>> 6)) & (1L << block)) == 0;
+        };
+    }
+
+    // mapped shared segments can not be passed to CRC32C directly, so they are checksummed through heap chunks
+    private static long checksum(MemorySegment segment) {
+        byte[] chunk = CHECKSUM_BUFFERS.get();
+        MemorySegment chunkSegment = MemorySegment.ofArray(chunk);
+        CRC32C crc = new CRC32C();
+        for (long offset = 0; offset < segment.byteSize(); offset += chunk.length) {
+            int size = (int) Math.min(chunk.length, segment.byteSize() - offset);
+            chunkSegment.asSlice(0, size).copyFrom(segment.asSlice(offset, size));
+            crc.update(chunk, 0, size);
+        }
+        return crc.getValue();
+    }
+
+    @Override
+    public boolean hasTombstone() {
+        return hasTombstone;
+    }
+
+    @Override
+    public long entryCount() {
+        return entryCount;
+    }
+
+    // block headers are counted as stored size too
+    @Override
+    public double compressionRatio() {
+        long storedSize = blockIndexOffset;
+        return storedSize == 0 ? 1 : (double) rawBlocksSize / storedSize;
+    }
+
+    @Override
+    public long decompressionNanos() {
+        return decompressionNanos.sum();
+    }
+
+    @Override
+    public Entry<MemorySegment> get(MemorySegment key, long keyHash) {
+        if (!mayContain(key)) {
+            return null;
+        }
+        if (hashIndex != null) {
+            return getByHash(key, keyHash);
+        }
+        if (bloomFilter != null && !bloomFilter.mightContain(keyHash)) {
+            return null;
+        }
+        long block = floorBlock(key);
+        if (block < 0) {
+            return null;
+        }
+        MemorySegment data = block(block, LOOKUP_BUFFERS.get());
+        KeyBuffer buffer = new KeyBuffer();
+        long position = seek(data, key, buffer);
+        if (position == dataEnd(data)) {
+            return null;
+        }
+        if (MemorySegmentComparator.INSTANCE.compare(key, buffer.key()) != 0) {
+            return null;
+        }
+        return entryAt(data, position, buffer.copy());
+    }
+
+    // every key is in hash index, so the first free slot means there is no such key
+    private Entry<MemorySegment> getByHash(MemorySegment key, long keyHash) {
+        for (long slot = hashIndex.firstSlot(keyHash); ; slot = hashIndex.nextSlot(slot)) {
+            long location = hashIndex.location(slot);
+            if (location == HashIndex.EMPTY) {
+                return null;
+            }
+            if (hashIndex.hash(slot) != keyHash) {
+                continue;
+            }
+            MemorySegment data = block(HashIndex.block(location), LOOKUP_BUFFERS.get());
+            KeyBuffer buffer = new KeyBuffer();
+            int position = HashIndex.position(location);
+            decodeKeyAt(data, position, buffer);
+            if (MemorySegmentComparator.INSTANCE.compare(key, buffer.key()) == 0) {
+                return entryAt(data, position, buffer.copy());
+            }
+        }
+    }
+
+    // fences check for point lookup
+    boolean mayContain(MemorySegment key) {
+        return minKey != null
+                && MemorySegmentComparator.INSTANCE.compare(key, minKey) >= 0
+                && MemorySegmentComparator.INSTANCE.compare(key, maxKey) <= 0;
+    }
+
+    // fences check for range
+    @Override
+    public boolean mayOverlap(MemorySegment from, MemorySegment to) {
+        return minKey != null
+                && MemorySegmentComparator.INSTANCE.compare(from, maxKey) <= 0
+                && (to == null || MemorySegmentComparator.INSTANCE.compare(to, minKey) > 0);
+    }
+
+    @Override
+    public Iterator<Entry<MemorySegment>> iterate(MemorySegment keyFrom, MemorySegment keyTo) {
+        long toBlock = keyTo == null ? blockCount - 1 : floorBlock(keyTo);
+        if (toBlock < 0) {
+            return Collections.emptyIterator();
+        }
+        BlockBuffer blockBuffer = new BlockBuffer();
+        KeyBuffer keyBuffer = new KeyBuffer();
+        long toPosition = keyTo == null ? Long.MAX_VALUE : seek(block(toBlock, blockBuffer), keyTo, keyBuffer);
+        long fromBlock = Math.max(floorBlock(keyFrom), 0);
+        MemorySegment fromData = block(fromBlock, blockBuffer);
+        long fromPosition = seek(fromData, keyFrom, keyBuffer);
+
+        return new Iterator<>() {
+            long block = fromBlock;
+            MemorySegment data = fromData;
+            long dataEnd = dataEnd(fromData);
+            long position = fromPosition;
+
+            @Override
+            public boolean hasNext() {
+                while (position == dataEnd && block < toBlock) {
+                    block++;
+                    data = block(block, blockBuffer);
+                    dataEnd = dataEnd(data);
+                    position = 0;
+                    decodeKey(data, position, keyBuffer);
+                }
+                return position < dataEnd && (block < toBlock || block == toBlock && position < toPosition);
+            }
+
+            @Override
+            public Entry<MemorySegment> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry<MemorySegment> entry = entryAt(data, position, keyBuffer.copy());
+                position = nextEntry(data, position);
+                if (position < dataEnd) {
+                    decodeKey(data, position, keyBuffer);
+                }
+                return entry;
+            }
+        };
+    }
+
+    // the last block which first key <= key, -1 if key is less than any key in sstable
+    private long floorBlock(MemorySegment key) {
+        return blockIndex.upperBound(key) - 1L;
+    }
+
+    // content of raw block, decompressed one is valid until buffer is reused
+    private MemorySegment block(long block, BlockBuffer buffer) {
+        long offset = blockOffset(block);
+        long end = block + 1 == blockCount ? blockIndexOffset : blockOffset(block + 1);
+        if (needsVerification(block)) {
+            verifyBlock(block);
+        }
+        byte codecId = MemoryAccess.getByteAtOffset(sstable, offset);
+        long rawSize = VarInts.read(sstable, offset + Byte.BYTES);
+        long payloadOffset = offset + Byte.BYTES + VarInts.size(rawSize) + Integer.BYTES;
+        MemorySegment stored = sstable.asSlice(payloadOffset, end - payloadOffset);
+        if (codecId == BlockCodec.RAW) {
+            return stored;
+        }
+
+        long start = System.nanoTime();
+        MemorySegment data = buffer.decompress(BlockCodec.forId(codecId), stored, (int) rawSize);
+        decompressionNanos.add(System.nanoTime() - start);
+        return data;
+    }
+
+    // position of the first entry in block with key >= given one (buffer holds its key), data end if there is none
+    private long seek(MemorySegment data, MemorySegment key, KeyBuffer buffer) {
+        int restartCount = MemoryAccess.getIntAtOffset(data, data.byteSize() - Integer.BYTES);
+        long restartsOffset = data.byteSize() - Integer.BYTES - (long) restartCount * Integer.BYTES;
+
+        // the last restart point with key <= given one, full keys are stored there
+        int left = 0;
+        int right = restartCount - 1;
+        while (left <= right) {
+            int mid = (left + right) >>> 1;
+            long position = restartPosition(data, restartsOffset, mid);
+            int comparedResult = MemorySegmentComparator.INSTANCE.compare(key, unsharedKey(data, position));
+            if (comparedResult > 0) {
+                left = mid + 1;
+            } else if (comparedResult < 0) {
+                right = mid - 1;
+            } else {
+                decodeKey(data, position, buffer);
+                return position;
+            }
+        }
+
+        long position = restartPosition(data, restartsOffset, Math.max(right, 0));
+        while (position < restartsOffset) {
+            decodeKey(data, position, buffer);
+            if (MemorySegmentComparator.INSTANCE.compare(buffer.key(), key) >= 0) {
+                return position;
+            }
+            position = nextEntry(data, position);
+        }
+        return restartsOffset;
+    }
+
+    // key of entry is restored starting from the last restart point before it
+    private void decodeKeyAt(MemorySegment data, int position, KeyBuffer buffer) {
+        long restartsOffset = dataEnd(data);
+        int left = 0;
+        int right = MemoryAccess.getIntAtOffset(data, data.byteSize() - Integer.BYTES) - 1;
+        while (left <= right) {
+            int mid = (left + right) >>> 1;
+            if (restartPosition(data, restartsOffset, mid) <= position) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        long current = restartPosition(data, restartsOffset, Math.max(right, 0));
+        decodeKey(data, current, buffer);
+        while (current < position) {
+            current = nextEntry(data, current);
+            decodeKey(data, current, buffer);
+        }
+    }
+
+    private static int restartPosition(MemorySegment data, long restartsOffset, int index) {
+        return MemoryAccess.getIntAtOffset(data, restartsOffset + (long) index * Integer.BYTES);
+    }
+
+    // first byte after the last entry of the block
+    private static long dataEnd(MemorySegment data) {
+        int restartCount = MemoryAccess.getIntAtOffset(data, data.byteSize() - Integer.BYTES);
+        return data.byteSize() - Integer.BYTES - (long) restartCount * Integer.BYTES;
+    }
+
+    private long blockOffset(long block) {
+        return VarInts.read(sstable, indexEntry(block));
+    }
+
+    private MemorySegment firstKey(long block) {
+        long indexEntry = indexEntry(block);
+        long keySizeOffset = indexEntry + VarInts.size(VarInts.read(sstable, indexEntry));
+        long keySize = VarInts.read(sstable, keySizeOffset);
+        return sstable.asSlice(keySizeOffset + VarInts.size(keySize), keySize);
+    }
+
+    private long indexEntry(long block) {
+        return blockIndexOffset + MemoryAccess.getIntAtOffset(sstable, indexPositionsOffset + block * Integer.BYTES);
+    }
+
+    private static void decodeKey(MemorySegment data, long position, KeyBuffer buffer) {
+        buffer.decode(VarInts.read(data, position), unsharedKey(data, position));
+    }
+
+    private static MemorySegment unsharedKey(MemorySegment data, long position) {
+        long unsharedSizeOffset = position + VarInts.size(VarInts.read(data, position));
+        long unsharedSize = VarInts.read(data, unsharedSizeOffset);
+        return data.asSlice(unsharedSizeOffset + VarInts.size(unsharedSize), unsharedSize);
+    }
+
+    private static long valueOffset(MemorySegment data, long position) {
+        long unsharedSizeOffset = position + VarInts.size(VarInts.read(data, position));
+        long unsharedSize = VarInts.read(data, unsharedSizeOffset);
+        return unsharedSizeOffset + VarInts.size(unsharedSize) + unsharedSize;
+    }
+
+    private long nextEntry(MemorySegment data, long position) {
+        long valueOffset = valueOffset(data, position);
+        long encodedSize = VarInts.read(data, valueOffset);
+        long next = valueOffset + VarInts.size(encodedSize);
+        if (encodedSize == TOMBSTONE) {
+            return next;
+        }
+        if (encodedSize < valueSizeShift) {
+            // logId, offset and size of value log pointer
+            for (int i = 0; i < 3; i++) {
+                next += VarInts.size(VarInts.read(data, next));
+            }
+            return next;
+        }
+        return next + encodedSize - valueSizeShift;
+    }
+
+    private Entry<MemorySegment> entryAt(MemorySegment data, long position, MemorySegment key) {
+        long valueOffset = valueOffset(data, position);
+        long encodedSize = VarInts.read(data, valueOffset);
+        if (encodedSize == TOMBSTONE) {
+            return new BaseEntry<>(key, null);
+        }
+        if (encodedSize < valueSizeShift) {
+            long logIdOffset = valueOffset + VarInts.size(encodedSize);
+            long logId = VarInts.read(data, logIdOffset);
+            long offsetOffset = logIdOffset + VarInts.size(logId);
+            long offset = VarInts.read(data, offsetOffset);
+            long size = VarInts.read(data, offsetOffset + VarInts.size(offset));
+            return new ValueLogEntry(key, valueLog.value(logId, offset, size), logId, offset);
+        }
+        long valueSize = encodedSize - valueSizeShift;
+        MemorySegment value = data.asSlice(valueOffset + VarInts.size(encodedSize), valueSize);
+        // only mapped data outlives the block buffer
+        return new BaseEntry<>(key, data.isMapped() ? value : MemorySegment.ofArray(value.toByteArray()));
+    }
+}
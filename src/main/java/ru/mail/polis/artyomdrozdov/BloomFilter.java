@@ -0,0 +1,115 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+// filter structure:
+// (bitCount)(hashCount)(word...)
+// probes are derived from one 64-bit key hash by double hashing: h1 + i * h2
+class BloomFilter {
+
+    private static final long HEADER_SIZE = Long.BYTES * 2;
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long M1 = 0x87C37B91114253D5L;
+    private static final long M2 = 0x4CF5AD432745937FL;
+
+    private final MemorySegment words;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(MemorySegment words, long bitCount, int hashCount) {
+        this.words = words;
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+    }
+
+    static BloomFilter open(MemorySegment sstable, long offset) {
+        long bitCount = MemoryAccess.getLongAtOffset(sstable, offset);
+        int hashCount = (int) MemoryAccess.getLongAtOffset(sstable, offset + Long.BYTES);
+        return new BloomFilter(sstable.asSlice(offset + HEADER_SIZE, bitCount / Byte.SIZE), bitCount, hashCount);
+    }
+
+    boolean mightContain(long hash) {
+        long h1 = hash;
+        long h2 = Long.rotateLeft(hash, 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            long word = MemoryAccess.getLongAtOffset(words, (bit >>> 6) * Long.BYTES);
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // filter is sized for expected key count before the first key, so keys are added as they are written,
+    // only probe bits of the filter are kept in memory, more keys than expected just raise false positive rate
+    static final class Builder {
+
+        private final long bitCount;
+        private final int hashCount;
+        private final long[] words;
+
+        Builder(long expectedKeyCount, int bitsPerKey) {
+            this.bitCount = Math.max(Long.SIZE, (expectedKeyCount * bitsPerKey + Long.SIZE - 1) & -Long.SIZE);
+            // k = ln2 * m / n is optimal for false positive rate
+            this.hashCount = (int) Math.max(1, Math.min(30, Math.round(bitsPerKey * Math.log(2))));
+            this.words = new long[Math.toIntExact(bitCount / Long.SIZE)];
+        }
+
+        void add(long hash) {
+            long h1 = hash;
+            long h2 = Long.rotateLeft(hash, 32) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        void write(ChannelWriter writer) throws IOException {
+            writer.writeLong(bitCount);
+            writer.writeLong(hashCount);
+            for (long word : words) {
+                writer.writeLong(word);
+            }
+        }
+    }
+
+    // murmur3-like 64-bit hash, words are read in fixed byte order so that files are portable
+    static long hash(MemorySegment key) {
+        long size = key.byteSize();
+        long h = SEED ^ size * M1;
+        long offset = 0;
+        for (; offset + Long.BYTES <= size; offset += Long.BYTES) {
+            h = mix(h, MemoryAccess.getLongAtOffset(key, offset, ByteOrder.LITTLE_ENDIAN));
+        }
+        if (offset < size) {
+            long tail = 0;
+            for (int shift = 0; offset < size; offset++, shift += Byte.SIZE) {
+                tail |= (MemoryAccess.getByteAtOffset(key, offset) & 0xFFL) << shift;
+            }
+            h = mix(h, tail);
+        }
+        return finalizeHash(h);
+    }
+
+    private static long mix(long h, long word) {
+        long k = word * M1;
+        k = Long.rotateLeft(k, 31);
+        k *= M2;
+        return Long.rotateLeft(h ^ k, 27) * 5 + 0x52DCE729;
+    }
+
+    private static long finalizeHash(long hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,162 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// buffered sequential writer which knows how many bytes are written so far
+// it can checksum written bytes right in its buffer, bytes added by append are not checksummed
+class ChannelWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final MemorySegment bufferSegment = MemorySegment.ofByteBuffer(buffer);
+    private long position;
+    private CRC32C checksum;
+    private int checksumFrom;
+
+    ChannelWriter(Path file) throws IOException {
+        this(FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        ));
+    }
+
+    private ChannelWriter(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.position = channel.size();
+        channel.position(position);
+    }
+
+    // continues existing file, position is still counted from its start
+    static ChannelWriter appending(Path file) throws IOException {
+        return new ChannelWriter(FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        ));
+    }
+
+    long position() {
+        return position;
+    }
+
+    void writeLong(long value) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            flushBuffer();
+        }
+        MemoryAccess.setLongAtOffset(bufferSegment, buffer.position(), value);
+        buffer.position(buffer.position() + Long.BYTES);
+        position += Long.BYTES;
+    }
+
+    void writeByte(byte value) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flushBuffer();
+        }
+        buffer.put(value);
+        position++;
+    }
+
+    void writeVarLong(long value) throws IOException {
+        if (buffer.remaining() < VarInts.MAX_SIZE) {
+            flushBuffer();
+        }
+        int size = VarInts.write(bufferSegment, buffer.position(), value);
+        buffer.position(buffer.position() + size);
+        position += size;
+    }
+
+    void writeInt(int value) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            flushBuffer();
+        }
+        MemoryAccess.setIntAtOffset(bufferSegment, buffer.position(), value);
+        buffer.position(buffer.position() + Integer.BYTES);
+        position += Integer.BYTES;
+    }
+
+    void write(MemorySegment segment) throws IOException {
+        long size = segment.byteSize();
+        long offset = 0;
+        while (offset < size) {
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            int chunk = (int) Math.min(buffer.remaining(), size - offset);
+            bufferSegment.asSlice(buffer.position(), chunk).copyFrom(segment.asSlice(offset, chunk));
+            buffer.position(buffer.position() + chunk);
+            offset += chunk;
+        }
+        position += size;
+    }
+
+    // appends the whole content of other writer's file
+    void append(ChannelWriter other) throws IOException {
+        flushBuffer();
+        other.flushBuffer();
+        long size = other.position;
+        long transferred = 0;
+        while (transferred < size) {
+            transferred += other.channel.transferTo(transferred, size - transferred, channel);
+        }
+        position += size;
+    }
+
+    void startChecksum() {
+        checksum = new CRC32C();
+        checksumFrom = buffer.position();
+    }
+
+    // CRC32C of bytes written since startChecksum
+    long finishChecksum() {
+        updateChecksum();
+        long value = checksum.getValue();
+        checksum = null;
+        return value;
+    }
+
+    private void updateChecksum() {
+        if (checksum != null && buffer.position() > checksumFrom) {
+            checksum.update(buffer.slice(checksumFrom, buffer.position() - checksumFrom));
+            checksumFrom = buffer.position();
+        }
+    }
+
+    void force() throws IOException {
+        flushBuffer();
+        channel.force(false);
+    }
+
+    private void flushBuffer() throws IOException {
+        updateChecksum();
+        checksumFrom = 0;
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+}
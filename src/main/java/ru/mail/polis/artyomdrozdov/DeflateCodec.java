@@ -0,0 +1,71 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+class DeflateCodec implements BlockCodec {
+
+    static final DeflateCodec DECODER = new DeflateCodec();
+
+    // inflater is reset before every block, so it is enough to have one per thread
+    private static final ThreadLocal<InflateState> INFLATE_STATES = ThreadLocal.withInitial(InflateState::new);
+
+    private Deflater deflater;
+
+    @Override
+    public byte id() {
+        return DEFLATE;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcSize, byte[] dst) {
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        }
+        deflater.reset();
+        deflater.setInput(src, 0, srcSize);
+        deflater.finish();
+        int size = deflater.deflate(dst);
+        return deflater.finished() ? size : -1;
+    }
+
+    @Override
+    public void decompress(MemorySegment src, byte[] dst, int dstSize) {
+        InflateState state = INFLATE_STATES.get();
+        Inflater inflater = state.inflater;
+        inflater.reset();
+        // inflater does not accept buffers of shared mapped segments, so input is copied to heap
+        inflater.setInput(state.input(src), 0, (int) src.byteSize());
+        try {
+            int size = inflater.inflate(dst, 0, dstSize);
+            if (size != dstSize || !inflater.finished()) {
+                throw new IllegalStateException("Corrupted block: expected " + dstSize + " bytes, got " + size);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted block", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+    private static class InflateState {
+        final Inflater inflater = new Inflater();
+        byte[] input = new byte[0];
+
+        byte[] input(MemorySegment src) {
+            if (input.length < src.byteSize()) {
+                input = new byte[(int) src.byteSize()];
+            }
+            MemorySegment.ofArray(input).asSlice(0, src.byteSize()).copyFrom(src);
+            return input;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package ru.mail.polis.artyomdrozdov;
 
 import jdk.incubator.foreign.MemorySegment;
 import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.util.Comparator;
 
@@ -0,0 +1,81 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.MemorySegmentComparator;
+
+import java.nio.ByteOrder;
+import java.util.function.LongFunction;
+
+// sorted keys laid out in heap arrays in BFS (Eytzinger) order: node k has children 2k and 2k + 1,
+// so the first levels of every search share a few cache lines and the next node is known before comparison
+// node keeps 8 big-endian bytes of its key which follow the prefix common for all keys,
+// full key is read only when these bytes are equal
+class EytzingerIndex {
+
+    private final int size;
+    private final MemorySegment commonPrefix;
+    // 1-based, index 0 is unused
+    private final long[] prefixes;
+    private final int[] ordinals;
+    private final LongFunction<MemorySegment> keys;
+
+    // keys is called with ordinals in [0, size) and returns keys in ascending order,
+    // all of them have to start with commonPrefix
+    EytzingerIndex(int size, MemorySegment commonPrefix, LongFunction<MemorySegment> keys) {
+        this.size = size;
+        this.commonPrefix = commonPrefix;
+        this.prefixes = new long[size + 1];
+        this.ordinals = new int[size + 1];
+        this.keys = keys;
+        fill(1, 0);
+    }
+
+    // in-order traversal of implicit tree assigns sorted ordinals, returns the next ordinal
+    private int fill(int node, int ordinal) {
+        if (node > size) {
+            return ordinal;
+        }
+        int next = fill(node * 2, ordinal);
+        prefixes[node] = prefix(keys.apply(next), commonPrefix.byteSize());
+        ordinals[node] = next;
+        return fill(node * 2 + 1, next + 1);
+    }
+
+    // the first ordinal with key > given one, size if there is none
+    int upperBound(MemorySegment key) {
+        long mismatch = commonPrefix.mismatch(key);
+        if (mismatch != -1 && mismatch < commonPrefix.byteSize()) {
+            return MemorySegmentComparator.INSTANCE.compare(key, commonPrefix) < 0 ? 0 : size;
+        }
+        long keyPrefix = prefix(key, commonPrefix.byteSize());
+        int node = 1;
+        while (node <= size) {
+            node = node * 2 + (compare(node, key, keyPrefix) <= 0 ? 1 : 0);
+        }
+        // the last turn to the left leads to the answer
+        node >>>= Integer.numberOfTrailingZeros(~node) + 1;
+        return node == 0 ? size : ordinals[node];
+    }
+
+    private int compare(int node, MemorySegment key, long keyPrefix) {
+        int result = Long.compareUnsigned(prefixes[node], keyPrefix);
+        if (result != 0) {
+            return result;
+        }
+        return MemorySegmentComparator.INSTANCE.compare(keys.apply(ordinals[node]), key);
+    }
+
+    // shorter keys are padded with zeroes, so prefixes order is consistent with keys order
+    static long prefix(MemorySegment key, long offset) {
+        if (key.byteSize() >= offset + Long.BYTES) {
+            return MemoryAccess.getLongAtOffset(key, offset, ByteOrder.BIG_ENDIAN);
+        }
+        long prefix = 0;
+        for (long i = offset; i < offset + Long.BYTES; i++) {
+            long b = i < key.byteSize() ? MemoryAccess.getByteAtOffset(key, i) & 0xFFL : 0;
+            prefix = prefix << Byte.SIZE | b;
+        }
+        return prefix;
+    }
+}
@@ -0,0 +1,98 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// open addressing table over key hashes (see BloomFilter.hash), every key of sstable has its slot
+// index structure:
+// (slotCount)((hash)(location)...)
+// location is (block << 32 | entryPosition), position is an offset in raw block, EMPTY marks free slot
+// slot count is a power of two, probing is linear, so lookup of absent key stops at the first free slot
+class HashIndex {
+
+    static final long EMPTY = -1;
+
+    private static final long SLOT_SIZE = Long.BYTES * 2;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private final MemorySegment slots;
+    private final long mask;
+
+    private HashIndex(MemorySegment slots, long slotCount) {
+        this.slots = slots;
+        this.mask = slotCount - 1;
+    }
+
+    static HashIndex open(MemorySegment sstable, long offset) {
+        long slotCount = MemoryAccess.getLongAtOffset(sstable, offset);
+        return new HashIndex(sstable.asSlice(offset + Long.BYTES, slotCount * SLOT_SIZE), slotCount);
+    }
+
+    long firstSlot(long hash) {
+        return hash & mask;
+    }
+
+    long nextSlot(long slot) {
+        return (slot + 1) & mask;
+    }
+
+    long hash(long slot) {
+        return MemoryAccess.getLongAtOffset(slots, slot * SLOT_SIZE);
+    }
+
+    long location(long slot) {
+        return MemoryAccess.getLongAtOffset(slots, slot * SLOT_SIZE + Long.BYTES);
+    }
+
+    static long location(long block, int position) {
+        return block << 32 | position;
+    }
+
+    static long block(long location) {
+        return location >>> 32;
+    }
+
+    static int position(long location) {
+        return (int) location;
+    }
+
+    // entries file holds (hash)(location) of every key, table is built in mapped temporary file,
+    // so neither of them takes heap however many keys there are
+    static void write(ChannelWriter writer, Path entriesFile, long keyCount, Path tableFile) throws IOException {
+        long slotCount = Long.highestOneBit(Math.max(1, (long) Math.ceil(keyCount / MAX_LOAD_FACTOR)) * 2 - 1);
+        long mask = slotCount - 1;
+
+        Files.deleteIfExists(tableFile);
+        Files.createFile(tableFile);
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            MemorySegment entries = MemorySegment.mapFile(
+                    entriesFile, 0, keyCount * SLOT_SIZE, FileChannel.MapMode.READ_ONLY, scope
+            );
+            MemorySegment table = MemorySegment.mapFile(
+                    tableFile, 0, slotCount * SLOT_SIZE, FileChannel.MapMode.READ_WRITE, scope
+            );
+            for (long slot = 0; slot < slotCount; slot++) {
+                MemoryAccess.setLongAtOffset(table, slot * SLOT_SIZE + Long.BYTES, EMPTY);
+            }
+            for (long i = 0; i < keyCount; i++) {
+                long hash = MemoryAccess.getLongAtOffset(entries, i * SLOT_SIZE);
+                long location = MemoryAccess.getLongAtOffset(entries, i * SLOT_SIZE + Long.BYTES);
+                long slot = hash & mask;
+                while (MemoryAccess.getLongAtOffset(table, slot * SLOT_SIZE + Long.BYTES) != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                MemoryAccess.setLongAtOffset(table, slot * SLOT_SIZE, hash);
+                MemoryAccess.setLongAtOffset(table, slot * SLOT_SIZE + Long.BYTES, location);
+            }
+
+            writer.writeLong(slotCount);
+            writer.write(table);
+        }
+    }
+}
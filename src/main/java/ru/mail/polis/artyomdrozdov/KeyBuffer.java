@@ -0,0 +1,36 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+
+import java.util.Arrays;
+
+// growable heap buffer which holds the last decoded key of prefix-compressed sequence
+// next key is built in place: shared prefix stays, only the suffix is copied
+class KeyBuffer {
+
+    private byte[] bytes = new byte[64];
+    private MemorySegment segment = MemorySegment.ofArray(bytes);
+    private long size;
+
+    void decode(long shared, MemorySegment suffix) {
+        long newSize = shared + suffix.byteSize();
+        if (newSize > bytes.length) {
+            if (newSize > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Key is too big: " + newSize);
+            }
+            bytes = Arrays.copyOf(bytes, (int) Math.max(newSize, bytes.length * 2L));
+            segment = MemorySegment.ofArray(bytes);
+        }
+        segment.asSlice(shared, suffix.byteSize()).copyFrom(suffix);
+        size = newSize;
+    }
+
+    // view is valid only until the next decode
+    MemorySegment key() {
+        return segment.asSlice(0, size);
+    }
+
+    MemorySegment copy() {
+        return MemorySegment.ofArray(Arrays.copyOf(bytes, (int) size));
+    }
+}
@@ -0,0 +1,154 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// reader of the very first format, such files are never written anymore
+// file structure:
+// (fileVersion)(entryCount)(hasTombstone)((entryPosition)...)|((keySize/key/valueSize/value)...)
+// valueSize is -1 for tombstone
+// there are neither checksums, fences nor value log pointers,
+// so verification does nothing and every range may overlap
+class LegacySSTable implements SSTable {
+
+    static final long VERSION = 0;
+    private static final int INDEX_HEADER_SIZE = Long.BYTES * 3;
+    private static final int INDEX_RECORD_SIZE = Long.BYTES;
+
+    private final MemorySegment sstable;
+    private final long recordsCount;
+    private final boolean hasTombstone;
+
+    private LegacySSTable(MemorySegment sstable) {
+        this.sstable = sstable;
+        this.recordsCount = MemoryAccess.getLongAtOffset(sstable, Long.BYTES);
+        this.hasTombstone = MemoryAccess.getLongAtOffset(sstable, Long.BYTES * 2) != 0;
+    }
+
+    static SSTable open(MemorySegment sstable, Config.ChecksumVerification verification, ValueLog valueLog) {
+        if (sstable.byteSize() < INDEX_HEADER_SIZE) {
+            throw new IllegalStateException("Corrupted sstable: file is too short");
+        }
+        return new LegacySSTable(sstable);
+    }
+
+    @Override
+    public long version() {
+        return VERSION;
+    }
+
+    @Override
+    public boolean hasTombstone() {
+        return hasTombstone;
+    }
+
+    @Override
+    public long entryCount() {
+        return recordsCount;
+    }
+
+    @Override
+    public Entry<MemorySegment> get(MemorySegment key, long keyHash) {
+        long index = entryIndex(key);
+        return index < 0 ? null : entryAt(index);
+    }
+
+    @Override
+    public Iterator<Entry<MemorySegment>> iterate(MemorySegment from, MemorySegment to) {
+        long fromIndex = greaterOrEqualEntryIndex(from);
+        long toIndex = to == null ? recordsCount : greaterOrEqualEntryIndex(to);
+
+        return new Iterator<>() {
+            long index = fromIndex;
+
+            @Override
+            public boolean hasNext() {
+                return index < toIndex;
+            }
+
+            @Override
+            public Entry<MemorySegment> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return entryAt(index++);
+            }
+        };
+    }
+
+    @Override
+    public boolean mayOverlap(MemorySegment from, MemorySegment to) {
+        return recordsCount > 0;
+    }
+
+    @Override
+    public Map<Long, Long> valueLogReferences() {
+        return Map.of();
+    }
+
+    @Override
+    public void verify() {
+        // nothing to verify
+    }
+
+    @Override
+    public double compressionRatio() {
+        return 1;
+    }
+
+    @Override
+    public long decompressionNanos() {
+        return 0;
+    }
+
+    private long greaterOrEqualEntryIndex(MemorySegment key) {
+        long index = entryIndex(key);
+        if (index < 0) {
+            return ~index;
+        }
+        return index;
+    }
+
+    private long entryIndex(MemorySegment key) {
+        long left = 0;
+        long right = recordsCount - 1;
+
+        while (left <= right) {
+            long mid = (left + right) >>> 1;
+
+            long keyPos = MemoryAccess.getLongAtOffset(sstable, INDEX_HEADER_SIZE + mid * INDEX_RECORD_SIZE);
+            long keySize = MemoryAccess.getLongAtOffset(sstable, keyPos);
+
+            MemorySegment keyForCheck = sstable.asSlice(keyPos + Long.BYTES, keySize);
+            int comparedResult = MemorySegmentComparator.INSTANCE.compare(key, keyForCheck);
+            if (comparedResult > 0) {
+                left = mid + 1;
+            } else if (comparedResult < 0) {
+                right = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return ~left;
+    }
+
+    private Entry<MemorySegment> entryAt(long index) {
+        long offset = MemoryAccess.getLongAtOffset(sstable, INDEX_HEADER_SIZE + index * INDEX_RECORD_SIZE);
+        long keySize = MemoryAccess.getLongAtOffset(sstable, offset);
+        long valueOffset = offset + Long.BYTES + keySize;
+        long valueSize = MemoryAccess.getLongAtOffset(sstable, valueOffset);
+        return new BaseEntry<>(
+                sstable.asSlice(offset + Long.BYTES, keySize),
+                valueSize == -1 ? null : sstable.asSlice(valueOffset + Long.BYTES, valueSize)
+        );
+    }
+}
@@ -0,0 +1,175 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// LZ4 block format: sequences of (token)(literalLength...)(literals)(offset)(matchLength...)
+// token keeps 4 bits of literal length and 4 bits of match length, 15 means that length continues in next bytes
+// greedy single-probe matcher, compression speed is preferred over ratio
+class Lz4Codec implements BlockCodec {
+
+    static final Lz4Codec DECODER = new Lz4Codec();
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 15;
+
+    private int[] hashTable;
+
+    @Override
+    public byte id() {
+        return LZ4;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcSize, byte[] dst) {
+        if (hashTable == null) {
+            hashTable = new int[1 << HASH_LOG];
+        }
+        Arrays.fill(hashTable, -1);
+
+        int dstPosition = 0;
+        int anchor = 0;
+        int position = 0;
+        int matchLimit = srcSize - MATCH_FIND_LIMIT;
+        while (position < matchLimit) {
+            int sequence = readInt(src, position);
+            int hash = (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+            int reference = hashTable[hash];
+            hashTable[hash] = position;
+            if (reference < 0 || position - reference > MAX_DISTANCE || readInt(src, reference) != sequence) {
+                position++;
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < srcSize - LAST_LITERALS
+                    && src[reference + matchLength] == src[position + matchLength]) {
+                matchLength++;
+            }
+            dstPosition = writeSequence(src, anchor, position - anchor, position - reference, matchLength, dst,
+                    dstPosition);
+            if (dstPosition < 0) {
+                return -1;
+            }
+            position += matchLength;
+            anchor = position;
+        }
+        return writeSequence(src, anchor, srcSize - anchor, 0, 0, dst, dstPosition);
+    }
+
+    // offset 0 means the last sequence which has only literals, returns -1 if dst is too small
+    private static int writeSequence(
+            byte[] src,
+            int literalsOffset,
+            int literalsLength,
+            int offset,
+            int matchLength,
+            byte[] dst,
+            int dstPosition) {
+        int size = 1 + lengthBytes(literalsLength) + literalsLength;
+        if (offset != 0) {
+            size += 2 + lengthBytes(matchLength - MIN_MATCH);
+        }
+        if (dstPosition + size > dst.length) {
+            return -1;
+        }
+
+        int token = Math.min(literalsLength, RUN_MASK) << 4;
+        if (offset != 0) {
+            token |= Math.min(matchLength - MIN_MATCH, RUN_MASK);
+        }
+        dst[dstPosition] = (byte) token;
+        int position = writeLength(literalsLength, dst, dstPosition + 1);
+        System.arraycopy(src, literalsOffset, dst, position, literalsLength);
+        position += literalsLength;
+        if (offset == 0) {
+            return position;
+        }
+        dst[position++] = (byte) offset;
+        dst[position++] = (byte) (offset >>> 8);
+        return writeLength(matchLength - MIN_MATCH, dst, position);
+    }
+
+    private static int lengthBytes(int length) {
+        return length < RUN_MASK ? 0 : (length - RUN_MASK) / 255 + 1;
+    }
+
+    private static int writeLength(int length, byte[] dst, int dstPosition) {
+        if (length < RUN_MASK) {
+            return dstPosition;
+        }
+        int position = dstPosition;
+        int remaining = length - RUN_MASK;
+        while (remaining >= 255) {
+            dst[position++] = (byte) 255;
+            remaining -= 255;
+        }
+        dst[position++] = (byte) remaining;
+        return position;
+    }
+
+    private static int readInt(byte[] src, int position) {
+        return (src[position] & 0xFF)
+                | (src[position + 1] & 0xFF) << 8
+                | (src[position + 2] & 0xFF) << 16
+                | (src[position + 3] & 0xFF) << 24;
+    }
+
+    @Override
+    public void decompress(MemorySegment src, byte[] dst, int dstSize) {
+        ByteBuffer source = src.asByteBuffer();
+        int srcSize = source.limit();
+        int position = 0;
+        int dstPosition = 0;
+        while (true) {
+            int token = source.get(position++) & 0xFF;
+
+            int literalsLength = token >>> 4;
+            if (literalsLength == RUN_MASK) {
+                int next;
+                do {
+                    next = source.get(position++) & 0xFF;
+                    literalsLength += next;
+                } while (next == 255);
+            }
+            source.get(position, dst, dstPosition, literalsLength);
+            position += literalsLength;
+            dstPosition += literalsLength;
+            if (position == srcSize) {
+                break;
+            }
+
+            int offset = (source.get(position) & 0xFF) | (source.get(position + 1) & 0xFF) << 8;
+            position += 2;
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int next;
+                do {
+                    next = source.get(position++) & 0xFF;
+                    matchLength += next;
+                } while (next == 255);
+            }
+            matchLength += MIN_MATCH;
+
+            int reference = dstPosition - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(dst, reference, dst, dstPosition, matchLength);
+            } else {
+                // overlapping match repeats the last offset bytes
+                for (int i = 0; i < matchLength; i++) {
+                    dst[dstPosition + i] = dst[reference + i];
+                }
+            }
+            dstPosition += matchLength;
+        }
+        if (dstPosition != dstSize) {
+            throw new IllegalStateException("Corrupted block: expected " + dstSize + " bytes, got " + dstPosition);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemoryHandles;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// one memtable generation together with its write-ahead log
+// keys and values are copied into off-heap arena chunks and linked into lock-free skiplist over arena references,
+// entries are views of the arena, so it is released at once by GC when neither memtable
+// nor any key or value it has handed out is reachable
+//
+// node structure (8-byte aligned):
+// (valueRef)(keySize)(height)(next...)(key)
+// value structure:
+// (valueSize)(value), valueSize is -1 for tombstone
+// reference is (chunkIndex << 32 | offsetInChunk), head node is the very first allocation,
+// so its reference 0 also means "no node" in links
+class MemTable {
+
+    private static final VarHandle LONG_HANDLE = MemoryHandles.varHandle(long.class, ByteOrder.nativeOrder());
+
+    private static final long NIL = 0;
+    private static final int MAX_HEIGHT = 12;
+    private static final long CHUNK_SIZE = 1 << 20;
+
+    private static final long VALUE_REF_OFFSET = 0;
+    private static final long KEY_SIZE_OFFSET = Long.BYTES;
+    private static final long HEIGHT_OFFSET = Long.BYTES * 2;
+    private static final long NEXT_OFFSET = Long.BYTES * 3;
+
+    private final ResourceScope scope = ResourceScope.newImplicitScope();
+    private final WriterGate writers = new WriterGate();
+    // null for memtable which replays existing logs, it has nothing to log then
+    private final WriteAheadLog wal;
+    private final AtomicLong byteSize = new AtomicLong();
+    private final AtomicLong entryCount = new AtomicLong();
+
+    private final Lock allocationLock = new ReentrantLock();
+    private volatile MemorySegment[] chunks = new MemorySegment[0];
+    private int currentChunk = -1;
+    private long currentOffset;
+
+    MemTable(WriteAheadLog wal) {
+        this.wal = wal;
+        long head = allocateNode(MemorySegment.ofArray(new byte[0]), MAX_HEIGHT, NIL);
+        assert head == NIL;
+    }
+
+    // returns memtable size after upsert
+    long upsert(Entry<MemorySegment> entry) throws IOException {
+        if (wal != null) {
+            wal.append(entry);
+        }
+        long valueRef = allocateValue(entry.value());
+        put(entry.key(), valueRef);
+        return byteSize.get();
+    }
+
+    Entry<MemorySegment> get(MemorySegment key) {
+        long node = greaterOrEqual(key);
+        if (node == NIL || MemorySegmentComparator.INSTANCE.compare(key, keyOf(node)) != 0) {
+            return null;
+        }
+        return entryOf(node);
+    }
+
+    Iterator<Entry<MemorySegment>> get(MemorySegment from, MemorySegment to) {
+        long start = from == null ? nextOf(NIL, 0) : greaterOrEqual(from);
+
+        return new Iterator<>() {
+            long node = start;
+
+            @Override
+            public boolean hasNext() {
+                return node != NIL && (to == null || MemorySegmentComparator.INSTANCE.compare(keyOf(node), to) < 0);
+            }
+
+            @Override
+            public Entry<MemorySegment> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry<MemorySegment> entry = entryOf(node);
+                node = nextOf(node, 0);
+                return entry;
+            }
+        };
+    }
+
+    Iterator<Entry<MemorySegment>> iterator() {
+        return get(null, null);
+    }
+
+    boolean isEmpty() {
+        return nextOf(NIL, 0) == NIL;
+    }
+
+    long byteSize() {
+        return byteSize.get();
+    }
+
+    // distinct keys, tombstones included
+    long entryCount() {
+        return entryCount.get();
+    }
+
+    // content is persisted in sstable, log is not needed anymore,
+    // arena stays until entries handed out by memtable are unreachable
+    void discard() throws IOException {
+        if (wal != null) {
+            wal.delete();
+        }
+    }
+
+    // content is not persisted, log is kept for replay on the next start
+    void close() throws IOException {
+        if (wal != null) {
+            wal.close();
+        }
+    }
+
+    // upserts are done between enter and exit, false if memtable is already sealed for flush
+    boolean enter() {
+        return writers.enter();
+    }
+
+    void exit() {
+        writers.exit();
+    }
+
+    // waits for upserts in progress, the others are turned away, so flush sees every upsert which got in
+    void seal() {
+        writers.seal();
+    }
+
+
+    private void put(MemorySegment key, long valueRef) {
+        long[] preds = new long[MAX_HEIGHT];
+        long[] succs = new long[MAX_HEIGHT];
+
+        long node = NIL;
+        for (int level = MAX_HEIGHT - 1; level >= 0; level--) {
+            node = findInLevel(key, node, level, preds, succs);
+        }
+        if (isEqual(succs[0], key)) {
+            setValue(succs[0], valueRef);
+            return;
+        }
+
+        int height = randomHeight();
+        long newNode = allocateNode(key, height, valueRef);
+        for (int level = 0; level < height; level++) {
+            while (true) {
+                setNext(newNode, level, succs[level]);
+                if (casNext(preds[level], level, succs[level], newNode)) {
+                    // node is in the list once it is linked at the bottom level
+                    if (level == 0) {
+                        entryCount.incrementAndGet();
+                    }
+                    break;
+                }
+                // somebody has linked another node after pred, it is still a valid start for search
+                findInLevel(key, preds[level], level, preds, succs);
+                if (level == 0 && isEqual(succs[0], key)) {
+                    setValue(succs[0], valueRef);
+                    return;
+                }
+            }
+        }
+    }
+
+    // stores last node with key < searched one and its successor, returns found predecessor
+    private long findInLevel(MemorySegment key, long start, int level, long[] preds, long[] succs) {
+        long node = start;
+        long next = nextOf(node, level);
+        while (next != NIL && MemorySegmentComparator.INSTANCE.compare(keyOf(next), key) < 0) {
+            node = next;
+            next = nextOf(node, level);
+        }
+        preds[level] = node;
+        succs[level] = next;
+        return node;
+    }
+
+    private long greaterOrEqual(MemorySegment key) {
+        long node = NIL;
+        long next = NIL;
+        for (int level = MAX_HEIGHT - 1; level >= 0; level--) {
+            next = nextOf(node, level);
+            while (next != NIL && MemorySegmentComparator.INSTANCE.compare(keyOf(next), key) < 0) {
+                node = next;
+                next = nextOf(node, level);
+            }
+        }
+        return next;
+    }
+
+    private boolean isEqual(long node, MemorySegment key) {
+        return node != NIL && MemorySegmentComparator.INSTANCE.compare(keyOf(node), key) == 0;
+    }
+
+    private static int randomHeight() {
+        int height = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (height < MAX_HEIGHT && random.nextInt(4) == 0) {
+            height++;
+        }
+        return height;
+    }
+
+    private Entry<MemorySegment> entryOf(long node) {
+        long valueRef = (long) LONG_HANDLE.getAcquire(chunk(node), offset(node) + VALUE_REF_OFFSET);
+        MemorySegment valueChunk = chunk(valueRef);
+        long valueOffset = offset(valueRef);
+        long valueSize = MemoryAccess.getLongAtOffset(valueChunk, valueOffset);
+        return new BaseEntry<>(
+                keyOf(node),
+                valueSize == -1 ? null : valueChunk.asSlice(valueOffset + Long.BYTES, valueSize)
+        );
+    }
+
+    private MemorySegment keyOf(long node) {
+        MemorySegment chunk = chunk(node);
+        long offset = offset(node);
+        long keySize = MemoryAccess.getLongAtOffset(chunk, offset + KEY_SIZE_OFFSET);
+        long height = MemoryAccess.getLongAtOffset(chunk, offset + HEIGHT_OFFSET);
+        return chunk.asSlice(offset + NEXT_OFFSET + height * Long.BYTES, keySize);
+    }
+
+    private long nextOf(long node, int level) {
+        return (long) LONG_HANDLE.getAcquire(chunk(node), offset(node) + NEXT_OFFSET + (long) level * Long.BYTES);
+    }
+
+    private void setNext(long node, int level, long next) {
+        LONG_HANDLE.setRelease(chunk(node), offset(node) + NEXT_OFFSET + (long) level * Long.BYTES, next);
+    }
+
+    private boolean casNext(long node, int level, long expected, long next) {
+        long nextOffset = offset(node) + NEXT_OFFSET + (long) level * Long.BYTES;
+        return LONG_HANDLE.compareAndSet(chunk(node), nextOffset, expected, next);
+    }
+
+    private void setValue(long node, long valueRef) {
+        LONG_HANDLE.setRelease(chunk(node), offset(node) + VALUE_REF_OFFSET, valueRef);
+    }
+
+    private long allocateNode(MemorySegment key, int height, long valueRef) {
+        long keyOffset = NEXT_OFFSET + (long) height * Long.BYTES;
+        long node = allocate(keyOffset + key.byteSize());
+        MemorySegment chunk = chunk(node);
+        long offset = offset(node);
+
+        MemoryAccess.setLongAtOffset(chunk, offset + VALUE_REF_OFFSET, valueRef);
+        MemoryAccess.setLongAtOffset(chunk, offset + KEY_SIZE_OFFSET, key.byteSize());
+        MemoryAccess.setLongAtOffset(chunk, offset + HEIGHT_OFFSET, height);
+        for (int level = 0; level < height; level++) {
+            MemoryAccess.setLongAtOffset(chunk, offset + NEXT_OFFSET + (long) level * Long.BYTES, NIL);
+        }
+        chunk.asSlice(offset + keyOffset, key.byteSize()).copyFrom(key);
+        return node;
+    }
+
+    private long allocateValue(MemorySegment value) {
+        long valueSize = value == null ? 0 : value.byteSize();
+        long ref = allocate(Long.BYTES + valueSize);
+        MemorySegment chunk = chunk(ref);
+        long offset = offset(ref);
+
+        MemoryAccess.setLongAtOffset(chunk, offset, value == null ? -1 : valueSize);
+        if (value != null) {
+            chunk.asSlice(offset + Long.BYTES, valueSize).copyFrom(value);
+        }
+        return ref;
+    }
+
+    private long allocate(long size) {
+        long alignedSize = (size + Long.BYTES - 1) & -Long.BYTES;
+        if (alignedSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Entry is too big for memtable: " + size);
+        }
+
+        allocationLock.lock();
+        try {
+            long ref;
+            if (alignedSize > CHUNK_SIZE / 4) {
+                // big entries get their own chunk, so current one is not wasted
+                ref = (long) addChunk(alignedSize) << 32;
+            } else {
+                if (currentChunk < 0 || currentOffset + alignedSize > CHUNK_SIZE) {
+                    currentChunk = addChunk(CHUNK_SIZE);
+                    currentOffset = 0;
+                }
+                ref = (long) currentChunk << 32 | currentOffset;
+                currentOffset += alignedSize;
+            }
+            byteSize.addAndGet(alignedSize);
+            return ref;
+        } finally {
+            allocationLock.unlock();
+        }
+    }
+
+    // called under allocation lock
+    private int addChunk(long size) {
+        MemorySegment[] current = chunks;
+        MemorySegment[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = MemorySegment.allocateNative(size, Long.BYTES, scope);
+        chunks = next;
+        return current.length;
+    }
+
+    private MemorySegment chunk(long ref) {
+        return chunks[(int) (ref >>> 32)];
+    }
+
+    private static long offset(long ref) {
+        return ref & 0xFFFFFFFFL;
+    }
+}
@@ -6,140 +6,317 @@ import ru.mail.polis.Dao;
 import ru.mail.polis.Entry;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class MemorySegmentDao implements Dao<MemorySegment, Entry<MemorySegment>> {
 
     private static final MemorySegment VERY_FIRST_KEY = MemorySegment.ofArray(new byte[]{});
 
-    private ConcurrentNavigableMap<MemorySegment, Entry<MemorySegment>> memory = createMemoryStorage();
+    // readers and writers take the current state without locks, only swaps of it are serialized by swapLock
+    private final AtomicReference<State> state;
+    private final Lock swapLock = new ReentrantLock();
+    // guarded by swapLock
+    private long walGeneration;
+    private Future<?> flushTask;
+    // written under swapLock
+    private volatile boolean closed;
+    // once background flush fails, its memtable stays in state and in log, dao serves only reads then
+    private volatile Exception flushFailure;
 
-    // FIXME make it final
-    private Storage storage;
-
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MemorySegmentDao-background");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final WriteStallController writeStall;
     private final Config config;
 
     public MemorySegmentDao(Config config) throws IOException {
         this.config = config;
-        this.storage = Storage.load(config);
+        this.writeStall = new WriteStallController(config.flushThresholdBytes(), config.writeStallTimeoutMillis());
+        Storage storage = Storage.load(config);
+        MemTable memory = new MemTable(WriteAheadLog.create(config, walGeneration));
+        this.state = new AtomicReference<>(new State(memory, null, storage));
+        if (config.checksumVerification() != Config.ChecksumVerification.OFF) {
+            // storage is swapped only by tasks of the same executor, so it stays open during verification
+            executor.execute(storage::verify);
+        }
     }
 
     @Override
     public Iterator<Entry<MemorySegment>> get(MemorySegment from, MemorySegment to) {
-        lock.readLock().lock();
-        try {
-            if (from == null) {
-                from = VERY_FIRST_KEY;
-            }
+        if (from == null) {
+            from = VERY_FIRST_KEY;
+        }
 
-            ArrayList<Iterator<Entry<MemorySegment>>> iterators = storage.iterate(from, to);
-            iterators.add(getMemoryIterator(from, to));
+        State current = currentState();
+        ArrayList<Iterator<Entry<MemorySegment>>> iterators = current.storage.iterate(from, to);
+        if (current.flushing != null) {
+            iterators.add(current.flushing.get(from, to));
+        }
+        iterators.add(current.memory.get(from, to));
 
-            Iterator<Entry<MemorySegment>> mergeIterator = MergeIterator.of(iterators, EntryKeyComparator.INSTANCE);
+        return new TombstoneFilteringIterator(MergeIterator.of(iterators, EntryKeyComparator.INSTANCE));
+    }
 
-            return new TombstoneFilteringIterator(mergeIterator);
-        } finally {
-            lock.readLock().unlock();
+    // nothing is pinned: memtable arenas and storage mappings swapped out by flush or compaction are freed
+    // only when no entry or iterator of them is reachable, close unmaps storage at once
+    private State currentState() {
+        if (closed) {
+            throw new IllegalStateException("Dao is closed");
         }
+        return state.get();
     }
 
-    private Iterator<Entry<MemorySegment>> getMemoryIterator(MemorySegment from, MemorySegment to) {
-        lock.readLock().lock();
-        try {
+    // entries stay readable after flush or compaction swaps out the part of state they were found in
+    @Override
+    public Entry<MemorySegment> get(MemorySegment key) {
+        State current = currentState();
+        Entry<MemorySegment> result = current.memory.get(key);
+        if (result == null && current.flushing != null) {
+            result = current.flushing.get(key);
+        }
+        if (result == null) {
+            result = current.storage.get(key);
+        }
+
+        return (result == null || result.isTombstone()) ? null : result;
+    }
+
+    @Override
+    public void upsert(Entry<MemorySegment> entry) {
+        boolean full;
+        while (true) {
+            writeStall.beforeWrite(this::flushBacklog);
+            checkFlushFailure();
+            State current = state.get();
+            // somebody else has filled memtable after stall check, so wait once more
+            if (current.flushing != null && current.memory.byteSize() >= config.flushThresholdBytes()) {
+                continue;
+            }
+            // memtable has been rotated and sealed meanwhile, the new one is in the next state
+            if (!current.memory.enter()) {
+                continue;
+            }
+            try {
+                full = current.memory.upsert(entry) >= config.flushThresholdBytes();
+                break;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                current.memory.exit();
+            }
+        }
 
-            if (to == null) {
-                return memory.tailMap(from).values().iterator();
+        if (full) {
+            try {
+                scheduleFlush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
+        }
+    }
 
-            return memory.subMap(from, to).values().iterator();
-        } finally {
-            lock.readLock().unlock();
+    // bytes written to active memtable while previous one is still being flushed,
+    // failed flush is never finished, so writers stop waiting for it
+    private long flushBacklog() {
+        State current = state.get();
+        return current.flushing == null || flushFailure != null ? 0 : current.memory.byteSize();
+    }
+
+    private void checkFlushFailure() {
+        Exception failure = flushFailure;
+        if (failure != null) {
+            throw new IllegalStateException("Background flush failed, dao is read-only", failure);
         }
     }
 
-    @Override
-    public Entry<MemorySegment> get(MemorySegment key) {
-        lock.readLock().lock();
+    // total time writers spent waiting for background flush
+    public long writeStallNanos() {
+        return writeStall.stalledNanos();
+    }
+
+    // rotates memtable if there is no flush in progress, returns current flush task (if any)
+    private Future<?> scheduleFlush() throws IOException {
+        swapLock.lock();
         try {
-            Entry<MemorySegment> result = memory.get(key);
-            if (result == null) {
-                result = storage.get(key);
+            State current = state.get();
+            if (current.flushing != null || current.memory.isEmpty()) {
+                return flushTask;
             }
-
-            return (result == null || result.isTombstone()) ? null : result;
+            MemTable table = current.memory;
+            state.set(new State(new MemTable(WriteAheadLog.create(config, ++walGeneration)), table, current.storage));
+            flushTask = executor.submit(() -> {
+                try {
+                    flushInBackground(table);
+                } catch (IOException | RuntimeException e) {
+                    flushFailure = e;
+                    writeStall.flushFinished();
+                    throw e;
+                }
+                return null;
+            });
+            return flushTask;
         } finally {
-            lock.readLock().unlock();
+            swapLock.unlock();
         }
     }
 
-    @Override
-    public void upsert(Entry<MemorySegment> entry) {
-        lock.readLock().lock();
+    private void flushInBackground(MemTable table) throws IOException {
+        // writers which took the memtable before rotation finish their upserts first
+        table.seal();
+        Storage previous = state.get().storage;
+
+        Storage.save(config, previous, table::iterator, table.entryCount());
+        Storage next = Storage.open(config);
+
+        boolean full;
+        swapLock.lock();
         try {
-            memory.put(entry.key(), entry);
+            State current = state.get();
+            state.set(new State(current.memory, null, next));
+            full = current.memory.byteSize() >= config.flushThresholdBytes();
         } finally {
-            lock.readLock().unlock();
+            swapLock.unlock();
+        }
+        writeStall.flushFinished();
+        previous.retire();
+        table.discard();
+
+        // writers were waiting for this flush, next one should start right away
+        if (full) {
+            scheduleFlush();
         }
     }
 
     @Override
     public void flush() throws IOException {
-        lock.writeLock().lock();
+        checkFlushFailure();
+        // memtable which is being flushed now is not the one caller wants to persist
+        await(currentFlush());
+        await(scheduleFlush());
+    }
+
+    private Future<?> currentFlush() {
+        swapLock.lock();
         try {
-            if (storage.isClosed()) {
-                return;
-            }
-            if (memory.isEmpty()) {
-                return;
-            }
-            storage.close();
-            Storage.save(config, storage, memory.values());
-            memory = createMemoryStorage();
-            this.storage = Storage.load(config);
+            return state.get().flushing == null ? null : flushTask;
         } finally {
-            lock.writeLock().unlock();
+            swapLock.unlock();
         }
     }
 
     @Override
     public void compact() throws IOException {
-        lock.writeLock().lock();
+        checkFlushFailure();
+        await(executor.submit(() -> {
+            compactInBackground();
+            return null;
+        }));
+    }
+
+    // compacts only sstables, memtables stay on top of the result
+    private void compactInBackground() throws IOException {
+        // storage is swapped only by tasks of this executor
+        Storage previous = state.get().storage;
+        if (previous.isCompacted()) {
+            return;
+        }
+
+        Storage.compact(config, previous, () -> new TombstoneFilteringIterator(
+                MergeIterator.of(previous.iterate(VERY_FIRST_KEY, null), EntryKeyComparator.INSTANCE)
+        ));
+        Storage next = Storage.open(config);
+
+        swapLock.lock();
         try {
-            if (memory.isEmpty() && storage.isCompacted()) {
-                return;
-            }
-            Storage.compact(config, this::all);
-            storage.close();
-            memory = createMemoryStorage();
+            State current = state.get();
+            state.set(new State(current.memory, current.flushing, next));
         } finally {
-            lock.writeLock().unlock();
+            swapLock.unlock();
+        }
+        previous.retire();
+    }
+
+    private static void await(Future<?> task) throws IOException {
+        if (task == null) {
+            return;
+        }
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for background task", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Background task failed", e.getCause());
         }
     }
 
     @Override
     public void close() throws IOException {
-        lock.writeLock().lock();
+        swapLock.lock();
         try {
-            if (storage.isClosed()) {
-                return;
-            }
-            storage.close();
-            if (memory.isEmpty()) {
+            if (closed) {
                 return;
             }
-            Storage.save(config, storage, memory.values());
+            closed = true;
         } finally {
-            lock.writeLock().unlock();
+            swapLock.unlock();
+        }
+
+        boolean flushed = false;
+        try {
+            flush();
+            flushed = true;
+        } finally {
+            try {
+                shutdownExecutor();
+            } finally {
+                State current = state.get();
+                current.storage.close();
+                if (flushed) {
+                    current.memory.discard();
+                } else {
+                    // logs of memtables which were not flushed are replayed by the next start
+                    current.memory.close();
+                    if (current.flushing != null) {
+                        current.flushing.close();
+                    }
+                }
+            }
         }
     }
 
+    private void shutdownExecutor() throws IOException {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new IllegalStateException("Background tasks are not finished");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing", e);
+        }
+    }
+
+    // memtables and storage of one moment, it is replaced as a whole on every swap
+    private record State(MemTable memory, MemTable flushing, Storage storage) {
+    }
+
     private static class TombstoneFilteringIterator implements Iterator<Entry<MemorySegment>> {
         private final Iterator<Entry<MemorySegment>> iterator;
         private Entry<MemorySegment> current;
@@ -175,8 +352,4 @@ public class MemorySegmentDao implements Dao<MemorySegment, Entry<MemorySegment>
             return next;
         }
     }
-
-    private static ConcurrentSkipListMap<MemorySegment, Entry<MemorySegment>> createMemoryStorage() {
-        return new ConcurrentSkipListMap<>(MemorySegmentComparator.INSTANCE);
-    }
 }
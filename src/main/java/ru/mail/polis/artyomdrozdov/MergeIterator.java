@@ -4,87 +4,165 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.NoSuchElementException;
 
+// tournament (loser) tree over current elements of sources:
+// leaf of source i is node (k + i), internal node keeps the source which lost the match played there,
+// node 0 keeps the overall winner, so replacing it replays only the matches on the way from its leaf to the root
+// equal elements are resolved in favor of the source with greater index, the others are skipped
 public class MergeIterator<E> implements Iterator<E> {
 
-    private final PriorityQueue<IteratorWrapper<E>> iterators;
+    private final Iterator<E>[] iterators;
     private final Comparator<E> comparator;
-
-    private MergeIterator(PriorityQueue<IteratorWrapper<E>> iterators, Comparator<E> comparator) {
-        this.iterators = iterators;
+    // null for exhausted source
+    private final E[] heads;
+    private final int[] tree;
+
+    @SuppressWarnings("unchecked")
+    private MergeIterator(List<Iterator<E>> iterators, Comparator<E> comparator) {
+        int k = iterators.size();
+        this.iterators = (Iterator<E>[]) iterators.toArray(new Iterator<?>[k]);
         this.comparator = comparator;
+        this.heads = (E[]) new Object[k];
+        this.tree = new int[k];
+
+        for (int i = 0; i < k; i++) {
+            heads[i] = this.iterators[i].hasNext() ? this.iterators[i].next() : null;
+        }
+
+        int[] winners = new int[k * 2];
+        for (int i = 0; i < k; i++) {
+            winners[k + i] = i;
+        }
+        for (int node = k - 1; node > 0; node--) {
+            int left = winners[node * 2];
+            int right = winners[node * 2 + 1];
+            boolean leftWins = beats(left, right);
+            winners[node] = leftWins ? left : right;
+            tree[node] = leftWins ? right : left;
+        }
+        tree[0] = winners[1];
     }
 
-    // iterators are strictly ordered by comparator (previous element always < next element)
+    // iterators are strictly ordered by comparator (previous element always < next element), elements are not null
     public static <E> Iterator<E> of(List<Iterator<E>> iterators, Comparator<E> comparator) {
         switch (iterators.size()) {
             case 0:
                 return Collections.emptyIterator();
             case 1:
                 return iterators.get(0);
+            case 2:
+                return new TwoWayMergeIterator<>(iterators.get(0), iterators.get(1), comparator);
             default:
-                // Just go on
-        }
-
-        PriorityQueue<MergeIterator.IteratorWrapper<E>> queue = new PriorityQueue<>(iterators.size(), (o1, o2) -> {
-            int result = comparator.compare(o1.peek(), o2.peek());
-            if (result != 0) {
-                return result;
-            }
-            // reverse order
-            return Integer.compare(o2.index, o1.index);
-        });
-
-        int index = 0;
-        for (Iterator<E> iterator : iterators) {
-            if (iterator.hasNext()) {
-                queue.add(new IteratorWrapper<>(index++, iterator));
-            }
+                return new MergeIterator<>(iterators, comparator);
         }
-
-        return new MergeIterator<>(queue, comparator);
     }
 
     @Override
     public boolean hasNext() {
-        return !iterators.isEmpty();
+        return heads[tree[0]] != null;
     }
 
     @Override
     public E next() {
-        IteratorWrapper<E> iterator = iterators.remove();
-        E next = iterator.next();
+        int winner = tree[0];
+        E next = heads[winner];
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        advance(winner);
 
-        while (!iterators.isEmpty()) {
-            IteratorWrapper<E> candidate = iterators.peek();
-            if (comparator.compare(next, candidate.peek()) != 0) {
+        // the same element in sources of lesser index is outdated
+        while (true) {
+            winner = tree[0];
+            E candidate = heads[winner];
+            if (candidate == null || comparator.compare(next, candidate) != 0) {
                 break;
             }
+            advance(winner);
+        }
+
+        return next;
+    }
 
-            iterators.remove();
-            candidate.next();
-            if (candidate.hasNext()) {
-                iterators.add(candidate);
+    private void advance(int source) {
+        heads[source] = iterators[source].hasNext() ? iterators[source].next() : null;
+
+        int winner = source;
+        for (int node = (heads.length + source) / 2; node > 0; node /= 2) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
             }
         }
+        tree[0] = winner;
+    }
 
-        if (iterator.hasNext()) {
-            iterators.add(iterator);
+    private boolean beats(int source, int other) {
+        E head = heads[source];
+        E otherHead = heads[other];
+        if (head == null || otherHead == null) {
+            return otherHead == null && (head != null || source > other);
         }
-
-        return next;
+        int result = comparator.compare(head, otherHead);
+        return result < 0 || result == 0 && source > other;
     }
 
-    private static class IteratorWrapper<E> extends PeekIterator<E> {
+    // the most frequent case: memory and one sstable
+    private static class TwoWayMergeIterator<E> implements Iterator<E> {
+
+        private final Iterator<E> first;
+        private final Iterator<E> second;
+        private final Comparator<E> comparator;
+        private E firstHead;
+        private E secondHead;
+
+        TwoWayMergeIterator(Iterator<E> first, Iterator<E> second, Comparator<E> comparator) {
+            this.first = first;
+            this.second = second;
+            this.comparator = comparator;
+            this.firstHead = first.hasNext() ? first.next() : null;
+            this.secondHead = second.hasNext() ? second.next() : null;
+        }
 
-        final int index;
+        @Override
+        public boolean hasNext() {
+            return firstHead != null || secondHead != null;
+        }
 
-        public IteratorWrapper(int index, Iterator<E> delegate) {
-            super(delegate);
-            this.index = index;
+        @Override
+        public E next() {
+            if (secondHead == null) {
+                if (firstHead == null) {
+                    throw new NoSuchElementException();
+                }
+                return nextFirst();
+            }
+            if (firstHead == null) {
+                return nextSecond();
+            }
+
+            int result = comparator.compare(firstHead, secondHead);
+            if (result < 0) {
+                return nextFirst();
+            }
+            if (result == 0) {
+                nextFirst();
+            }
+            return nextSecond();
         }
 
-    }
+        private E nextFirst() {
+            E next = firstHead;
+            firstHead = first.hasNext() ? first.next() : null;
+            return next;
+        }
 
+        private E nextSecond() {
+            E next = secondHead;
+            secondHead = second.hasNext() ? second.next() : null;
+            return next;
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.util.Iterator;
+import java.util.Map;
+
+// immutable sorted file, there is a reader for every supported format version
+// since version 9 every file ends with fixed-size trailer:
+// (formatVersion)(magic)
+// the very first format (version 0) has no trailer, it starts with its version instead
+// new files are always written in CURRENT_VERSION, older ones stay readable until compaction rewrites them
+interface SSTable {
+
+    long MAGIC = 0x504F_4C49_5353_5442L;
+    int TRAILER_SIZE = Long.BYTES * 2;
+    long CURRENT_VERSION = BlockSSTable.VERSION;
+
+    Map<Long, Reader> READERS = Map.of(
+            LegacySSTable.VERSION, LegacySSTable::open,
+            BlockSSTable.INLINE_VALUES_VERSION, BlockSSTable::open,
+            BlockSSTable.VALUE_LOG_VERSION, BlockSSTable::open,
+            BlockSSTable.VERSION, BlockSSTable::open
+    );
+
+    // values stored in value log are resolved through the given one
+    static SSTable open(MemorySegment sstable, Config.ChecksumVerification verification, ValueLog valueLog) {
+        long version = version(sstable);
+        Reader reader = READERS.get(version);
+        if (reader == null) {
+            throw new IllegalStateException("Unknown file version: " + version);
+        }
+        return reader.open(sstable, verification, valueLog);
+    }
+
+    private static long version(MemorySegment sstable) {
+        long size = sstable.byteSize();
+        if (size >= TRAILER_SIZE && MemoryAccess.getLongAtOffset(sstable, size - Long.BYTES) == MAGIC) {
+            return MemoryAccess.getLongAtOffset(sstable, size - TRAILER_SIZE);
+        }
+        if (size >= Long.BYTES) {
+            return MemoryAccess.getLongAtOffset(sstable, 0);
+        }
+        throw new IllegalStateException("Corrupted sstable: file is too short");
+    }
+
+    long version();
+
+    boolean hasTombstone();
+
+    // tombstones included
+    long entryCount();
+
+    // keyHash is BloomFilter.hash(key), it is computed once for all sstables
+    Entry<MemorySegment> get(MemorySegment key, long keyHash);
+
+    // range [from, to), null to means no upper bound
+    Iterator<Entry<MemorySegment>> iterate(MemorySegment from, MemorySegment to);
+
+    // false only if sstable surely has no keys in range [from, to)
+    boolean mayOverlap(MemorySegment from, MemorySegment to);
+
+    // bytes of values referenced by this sstable in every value log
+    Map<Long, Long> valueLogReferences();
+
+    // reads the whole file and throws IllegalStateException on checksum mismatch
+    void verify();
+
+    // raw size of blocks divided by their size on disk
+    double compressionRatio();
+
+    // total time spent in decompression since sstable was opened
+    long decompressionNanos();
+
+    interface Reader {
+        SSTable open(MemorySegment sstable, Config.ChecksumVerification verification, ValueLog valueLog);
+    }
+}
@@ -0,0 +1,294 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+// writes sstable in one sequential pass, entries are expected in key order
+// block index is streamed to a temporary file and appended after the data blocks,
+// only positions of its entries (one per block) are kept in memory
+// keys are expected to stay readable until the end, the first and the last keys are written as file fences
+// block is built in memory and then written either compressed or as is, when compression saves too little
+// bloom filter is sized by expected key count and filled as keys go, hash index needs the exact one,
+// so (hash)(location) of every key is streamed to a temporary file and the index is built from it at the end
+// big values go to value log, values which are already there keep their place unless their log is collected
+class SSTableWriter implements Closeable {
+
+    private static final String INDEX_EXT_TMP = ".idx";
+    private static final String HASHES_EXT_TMP = ".hashes";
+    private static final String HASH_INDEX_EXT_TMP = ".hashidx";
+
+    private final Path indexFile;
+    private final Path hashesFile;
+    private final Path hashIndexFile;
+    private final ChannelWriter data;
+    private final ChannelWriter index;
+    // null when there is no hash index
+    private final ChannelWriter hashes;
+    private final BlockCodec codec;
+    private final ValueLog.Writer valueLog;
+    private final Map<Long, Long> valueLogReferences = new TreeMap<>();
+    private final BlockBuffer block = new BlockBuffer();
+    // null when bloom filter is disabled
+    private final BloomFilter.Builder bloomFilter;
+    private byte[] compressed = new byte[0];
+    private final CRC32C checksum = new CRC32C();
+    private long rawBlocksSize;
+
+    private long entryCount;
+    private boolean hasTombstone;
+
+    private int[] indexPositions = new int[16];
+    private long blockCount;
+
+    private int[] restartPositions = new int[16];
+    private int restartCount;
+    private int blockEntryCount;
+    private MemorySegment firstKey;
+    private MemorySegment previousKey;
+
+    // expected key count is an upper bound of entries to be added, it only sizes bloom filter
+    SSTableWriter(Path file, long expectedKeyCount, Config config, Set<Long> collectedLogs) throws IOException {
+        this.indexFile = file.resolveSibling(file.getFileName() + INDEX_EXT_TMP);
+        this.hashesFile = file.resolveSibling(file.getFileName() + HASHES_EXT_TMP);
+        this.hashIndexFile = file.resolveSibling(file.getFileName() + HASH_INDEX_EXT_TMP);
+        this.data = new ChannelWriter(file);
+        this.index = new ChannelWriter(indexFile);
+        this.hashes = config.hashIndex() ? new ChannelWriter(hashesFile) : null;
+        index.startChecksum();
+        this.codec = BlockCodec.create(config.compression());
+        this.valueLog = new ValueLog.Writer(
+                config.basePath(), config.valueSeparationThresholdBytes(), ValueLog.MAX_LOG_SIZE, collectedLogs
+        );
+        this.bloomFilter = config.bloomBitsPerKey() > 0
+                ? new BloomFilter.Builder(expectedKeyCount, config.bloomBitsPerKey())
+                : null;
+    }
+
+    static void write(
+            Iterator<Entry<MemorySegment>> entries,
+            long expectedKeyCount,
+            Path file,
+            Config config,
+            Set<Long> collectedLogs) throws IOException {
+        try (SSTableWriter writer = new SSTableWriter(file, expectedKeyCount, config, collectedLogs)) {
+            while (entries.hasNext()) {
+                writer.add(entries.next());
+            }
+            writer.finish();
+        }
+    }
+
+    void add(Entry<MemorySegment> entry) throws IOException {
+        if (entryCount == 0) {
+            firstKey = entry.key();
+        }
+        if (blockEntryCount == 0) {
+            startBlock(entry.key());
+        }
+        int entryPosition = block.size();
+        writeKey(entry.key());
+        writeValue(entry);
+        if (bloomFilter != null || hashes != null) {
+            long keyHash = BloomFilter.hash(entry.key());
+            if (bloomFilter != null) {
+                bloomFilter.add(keyHash);
+            }
+            if (hashes != null) {
+                hashes.writeLong(keyHash);
+                hashes.writeLong(HashIndex.location(blockCount - 1, entryPosition));
+            }
+        }
+
+        hasTombstone |= entry.isTombstone();
+        entryCount++;
+
+        if (block.size() >= BlockSSTable.BLOCK_SIZE) {
+            finishBlock();
+        }
+    }
+
+    private void writeKey(MemorySegment key) {
+        long shared = 0;
+        if (blockEntryCount % BlockSSTable.RESTART_INTERVAL == 0) {
+            if (restartCount == restartPositions.length) {
+                restartPositions = Arrays.copyOf(restartPositions, restartPositions.length * 2);
+            }
+            restartPositions[restartCount++] = block.size();
+        } else {
+            long mismatch = previousKey.mismatch(key);
+            shared = mismatch == -1 ? key.byteSize() : mismatch;
+        }
+        blockEntryCount++;
+        previousKey = key;
+
+        block.writeVarLong(shared);
+        block.writeVarLong(key.byteSize() - shared);
+        block.write(key.asSlice(shared));
+    }
+
+    private void startBlock(MemorySegment firstKey) throws IOException {
+        if (blockCount == indexPositions.length) {
+            indexPositions = Arrays.copyOf(indexPositions, indexPositions.length * 2);
+        }
+        if (index.position() > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Block index is too big: " + index.position());
+        }
+        indexPositions[(int) blockCount++] = (int) index.position();
+
+        index.writeVarLong(data.position());
+        index.writeVarLong(firstKey.byteSize());
+        index.write(firstKey);
+    }
+
+    private void finishBlock() throws IOException {
+        for (int i = 0; i < restartCount; i++) {
+            block.writeInt(restartPositions[i]);
+        }
+        block.writeInt(restartCount);
+
+        int rawSize = block.size();
+        int compressedSize = -1;
+        if (codec != null) {
+            // compressed block has to save at least 1/8 of space to be worth decompression
+            int limit = rawSize - rawSize / 8;
+            if (compressed.length < limit) {
+                compressed = new byte[Math.max(limit, BlockSSTable.BLOCK_SIZE * 2)];
+            }
+            compressedSize = codec.compress(block.bytes(), rawSize, compressed);
+            if (compressedSize > limit) {
+                compressedSize = -1;
+            }
+        }
+
+        byte[] payload = compressedSize < 0 ? block.bytes() : compressed;
+        int payloadSize = compressedSize < 0 ? rawSize : compressedSize;
+        checksum.reset();
+        checksum.update(payload, 0, payloadSize);
+
+        data.writeByte(compressedSize < 0 ? BlockCodec.RAW : codec.id());
+        data.writeVarLong(rawSize);
+        data.writeInt((int) checksum.getValue());
+        data.write(MemorySegment.ofArray(payload).asSlice(0, payloadSize));
+
+        rawBlocksSize += rawSize;
+        restartCount = 0;
+        blockEntryCount = 0;
+        block.reset();
+    }
+
+    // size is shifted, so that small numbers can mean tombstone and value log pointer
+    private void writeValue(Entry<MemorySegment> entry) throws IOException {
+        MemorySegment value = entry.value();
+        if (value == null) {
+            block.writeVarLong(BlockSSTable.TOMBSTONE);
+        } else if (entry instanceof ValueLogEntry separated && valueLog.keeps(separated)) {
+            writeValuePointer(separated.logId(), separated.offset(), value.byteSize());
+        } else if (valueLog.separates(value)) {
+            // append may switch to the next log
+            long offset = valueLog.append(value);
+            writeValuePointer(valueLog.logId(), offset, value.byteSize());
+        } else {
+            block.writeVarLong(value.byteSize() + BlockSSTable.VALUE_SIZE_SHIFT);
+            block.write(value);
+        }
+    }
+
+    private void writeValuePointer(long logId, long offset, long size) {
+        block.writeVarLong(BlockSSTable.VALUE_POINTER);
+        block.writeVarLong(logId);
+        block.writeVarLong(offset);
+        block.writeVarLong(size);
+        valueLogReferences.merge(logId, size, Long::sum);
+    }
+
+    void finish() throws IOException {
+        if (blockEntryCount > 0) {
+            finishBlock();
+        }
+
+        long blockIndexOffset = data.position();
+        long blockIndexChecksum = index.finishChecksum();
+        data.append(index);
+        long indexPositionsOffset = data.position();
+        data.startChecksum();
+        for (int i = 0; i < blockCount; i++) {
+            data.writeInt(indexPositions[i]);
+        }
+
+        long bloomFilterOffset = 0;
+        if (bloomFilter != null) {
+            bloomFilterOffset = data.position();
+            bloomFilter.write(data);
+        }
+
+        // the first key is already in the block index, but fences are read eagerly, so they are kept together
+        long fencesOffset = 0;
+        if (entryCount > 0) {
+            fencesOffset = data.position();
+            data.writeVarLong(firstKey.byteSize());
+            data.write(firstKey);
+            data.writeVarLong(previousKey.byteSize());
+            data.write(previousKey);
+        }
+
+        long valueLogReferencesOffset = 0;
+        if (!valueLogReferences.isEmpty()) {
+            valueLogReferencesOffset = data.position();
+            data.writeVarLong(valueLogReferences.size());
+            for (Map.Entry<Long, Long> reference : valueLogReferences.entrySet()) {
+                data.writeVarLong(reference.getKey());
+                data.writeVarLong(reference.getValue());
+            }
+        }
+
+        long hashIndexOffset = 0;
+        if (hashes != null && entryCount > 0) {
+            hashIndexOffset = data.position();
+            // flushes what is left in its buffer, so that the whole file can be mapped
+            hashes.close();
+            HashIndex.write(data, hashesFile, entryCount, hashIndexFile);
+        }
+
+        long metadataChecksum = data.finishChecksum();
+
+        data.startChecksum();
+        data.writeLong(entryCount);
+        data.writeLong(hasTombstone ? 1 : 0);
+        data.writeLong(blockCount);
+        data.writeLong(blockIndexOffset);
+        data.writeLong(indexPositionsOffset);
+        data.writeLong(rawBlocksSize);
+        data.writeLong(bloomFilterOffset);
+        data.writeLong(fencesOffset);
+        data.writeLong(blockIndexChecksum);
+        data.writeLong(metadataChecksum);
+        data.writeLong(valueLogReferencesOffset);
+        data.writeLong(hashIndexOffset);
+        data.writeLong(data.finishChecksum());
+        data.writeLong(SSTable.CURRENT_VERSION);
+        data.writeLong(SSTable.MAGIC);
+        valueLog.force();
+        data.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (valueLog; index; hashes; data; codec) {
+            Files.deleteIfExists(indexFile);
+            Files.deleteIfExists(hashesFile);
+            Files.deleteIfExists(hashIndexFile);
+        }
+    }
+}
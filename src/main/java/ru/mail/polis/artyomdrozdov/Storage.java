@@ -1,137 +1,127 @@
 package ru.mail.polis.artyomdrozdov;
 
-import jdk.incubator.foreign.MemoryAccess;
 import jdk.incubator.foreign.MemorySegment;
 import jdk.incubator.foreign.ResourceScope;
-import ru.mail.polis.BaseEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.mail.polis.Config;
 import ru.mail.polis.Entry;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 class Storage implements Closeable {
 
-    private static final long VERSION = 0;
-    private static final int INDEX_HEADER_SIZE = Long.BYTES * 3;
-    private static final int INDEX_RECORD_SIZE = Long.BYTES;
+    private static final Logger LOG = LoggerFactory.getLogger(Storage.class);
 
     private static final String FILE_NAME = "data";
     private static final String FILE_EXT = ".dat";
     private static final String FILE_EXT_TMP = ".tmp";
     private static final String COMPACTED_FILE = FILE_NAME + "_compacted_" + FILE_EXT;
+    // unmaps storage which was swapped out once no entry read from it is reachable
+    private static final Cleaner CLEANER = Cleaner.create();
 
     static Storage load(Config config) throws IOException {
-        Path basePath = config.basePath();
         Path compactedFile = config.basePath().resolve(COMPACTED_FILE);
         if (Files.exists(compactedFile)) {
             finishCompact(config, compactedFile);
         }
+        replayLogs(config);
+        return open(config);
+    }
 
-        ArrayList<MemorySegment> sstables = new ArrayList<>();
-        ResourceScope scope = ResourceScope.newSharedScope();
+    // maps existing sstables as is
+    static Storage open(Config config) throws IOException {
+        Path basePath = config.basePath();
+        ArrayList<SSTable> sstables = new ArrayList<>();
+        ResourceScope scope = ResourceScope.newSharedScope(CLEANER);
+        ValueLog valueLog = new ValueLog();
 
         // FIXME check existing files
         for (int i = 0; ; i++) {
             Path nextFile = basePath.resolve(FILE_NAME + i + FILE_EXT);
             try {
-                sstables.add(mapForRead(scope, nextFile));
+                sstables.add(SSTable.open(mapForRead(scope, nextFile), config.checksumVerification(), valueLog));
             } catch (NoSuchFileException e) {
                 break;
             }
         }
 
-        return new Storage(scope, sstables);
+        Storage storage = new Storage(scope, sstables, valueLog);
+        valueLog.open(basePath, scope, storage.valueLogReferences().keySet());
+        return storage;
     }
+
+    // memtables which were not saved before shutdown become new sstables
+    private static void replayLogs(Config config) throws IOException {
+        List<Path> logs = WriteAheadLog.existing(config);
+        if (logs.isEmpty()) {
+            return;
+        }
+
+        int nextSSTableIndex = 0;
+        while (Files.exists(config.basePath().resolve(FILE_NAME + nextSSTableIndex + FILE_EXT))) {
+            nextSSTableIndex++;
+        }
+        LogReplay replay = new LogReplay(config, nextSSTableIndex);
+        for (Path log : logs) {
+            try (ResourceScope replayScope = ResourceScope.newConfinedScope()) {
+                WriteAheadLog.replay(log, replayScope, replay);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        replay.save();
+
+        for (Path log : logs) {
+            Files.delete(log);
+        }
+    }
+
     // it is supposed that entries can not be changed externally during this method call
+    // previous state stays readable, new sstable is visible only to storage opened after this call
+    // entry count is expected to be exact or greater
     static void save(
             Config config,
             Storage previousState,
-            Collection<Entry<MemorySegment>> entries) throws IOException {
-        if (previousState.scope.isAlive()) {
-            throw new IllegalStateException("Previous storage is open for write");
-        }
+            Data entries,
+            long entryCount) throws IOException {
         int nextSSTableIndex = previousState.sstables.size();
         Path sstablePath = config.basePath().resolve(FILE_NAME + nextSSTableIndex + FILE_EXT);
-        save(entries::iterator, sstablePath);
+        save(config, entries, entryCount, sstablePath, Set.of());
     }
 
+    // values from collected logs are moved to a new one
     private static void save(
+            Config config,
             Data entries,
-            Path sstablePath
+            long entryCount,
+            Path sstablePath,
+            Set<Long> collectedLogs
     ) throws IOException {
 
         Path sstableTmpPath = sstablePath.resolveSibling(sstablePath.getFileName().toString() + FILE_EXT_TMP);
 
-        Files.deleteIfExists(sstableTmpPath);
-        Files.createFile(sstableTmpPath);
-
-        try (ResourceScope writeScope = ResourceScope.newConfinedScope()) {
-            long size = 0;
-            long entriesCount = 0;
-            boolean hasTombstone = false;
-            for (Iterator<Entry<MemorySegment>> iterator = entries.iterator(); iterator.hasNext(); ) {
-                Entry<MemorySegment> entry = iterator.next();
-                if (entry.value() == null) {
-                    hasTombstone = true;
-                    size += Long.BYTES + entry.key().byteSize() + Long.BYTES;
-                } else {
-                    size += Long.BYTES + entry.value().byteSize() + entry.key().byteSize() + Long.BYTES;
-                }
-                entriesCount++;
-            }
-
-            long dataStart = INDEX_HEADER_SIZE + INDEX_RECORD_SIZE * entriesCount;
-
-            MemorySegment nextSSTable = MemorySegment.mapFile(
-                            sstableTmpPath,
-                            0,
-                            dataStart + size,
-                            FileChannel.MapMode.READ_WRITE,
-                            writeScope
-            );
-
-            long index = 0;
-            long offset = dataStart;
-            for (Iterator<Entry<MemorySegment>> iterator = entries.iterator(); iterator.hasNext(); ) {
-                Entry<MemorySegment> entry = iterator.next();
-                MemoryAccess.setLongAtOffset(nextSSTable, INDEX_HEADER_SIZE + index * INDEX_RECORD_SIZE, offset);
-
-                offset += writeRecord(nextSSTable, offset, entry.key());
-                offset += writeRecord(nextSSTable, offset, entry.value());
-
-                index++;
-            }
-
-            MemoryAccess.setLongAtOffset(nextSSTable, 0, VERSION);
-            MemoryAccess.setLongAtOffset(nextSSTable, 8, entriesCount);
-            MemoryAccess.setLongAtOffset(nextSSTable, 16, hasTombstone ? 1 : 0);
-
-            nextSSTable.force();
-        }
-
+        SSTableWriter.write(entries.iterator(), entryCount, sstableTmpPath, config, collectedLogs);
         Files.move(sstableTmpPath, sstablePath, StandardCopyOption.ATOMIC_MOVE);
     }
 
-    private static long writeRecord(MemorySegment nextSSTable, long offset, MemorySegment record) {
-        if (record == null) {
-            MemoryAccess.setLongAtOffset(nextSSTable, offset, -1);
-            return Long.BYTES;
-        }
-        long recordSize = record.byteSize();
-        MemoryAccess.setLongAtOffset(nextSSTable, offset, recordSize);
-        nextSSTable.asSlice(offset + Long.BYTES, recordSize).copyFrom(record);
-        return Long.BYTES + recordSize;
-    }
-
     @SuppressWarnings("DuplicateThrows")
     private static MemorySegment mapForRead(ResourceScope scope, Path file) throws NoSuchFileException, IOException {
         long size = Files.size(file);
@@ -139,9 +129,15 @@ class Storage implements Closeable {
         return MemorySegment.mapFile(file, 0, size, FileChannel.MapMode.READ_ONLY, scope);
     }
 
-    public static void compact(Config config, Data data) throws IOException {
+    // value logs of previous state with too many dead bytes are collected along the way
+    public static void compact(Config config, Storage previousState, Data data) throws IOException {
         Path compactedFile = config.basePath().resolve(COMPACTED_FILE);
-        save(data, compactedFile);
+        // merge drops shadowed entries and tombstones, so their sum is enough
+        long entryCount = 0;
+        for (SSTable sstable : previousState.sstables) {
+            entryCount += sstable.entryCount();
+        }
+        save(config, data, entryCount, compactedFile, previousState.garbageLogs());
         finishCompact(config, compactedFile);
     }
 
@@ -159,132 +155,139 @@ class Storage implements Closeable {
     // supposed to have fresh files first
 
     private final ResourceScope scope;
-    private final ArrayList<MemorySegment> sstables;
+    private final ArrayList<SSTable> sstables;
+    private final ValueLog valueLog;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
-    private Storage(ResourceScope scope, ArrayList<MemorySegment> sstables) {
+    private Storage(ResourceScope scope, ArrayList<SSTable> sstables, ValueLog valueLog) {
         this.scope = scope;
         this.sstables = sstables;
-    }
-
-    private long greaterOrEqualEntryIndex(MemorySegment sstable, MemorySegment key) {
-        long index = entryIndex(sstable, key);
-        if (index < 0) {
-            return ~index;
-        }
-        return index;
-    }
-
-    // file structure:
-    // (fileVersion)(entryCount)((entryPosition)...)|((keySize/key/valueSize/value)...)
-    private long entryIndex(MemorySegment sstable, MemorySegment key) {
-        long fileVersion = MemoryAccess.getLongAtOffset(sstable, 0);
-        if (fileVersion != 0) {
-            throw new IllegalStateException("Unknown file version: " + fileVersion);
-        }
-        long recordsCount = MemoryAccess.getLongAtOffset(sstable, 8);
-        if (key == null) {
-            // fixme
-            return recordsCount;
-        }
-
-        long left = 0;
-        long right = recordsCount - 1;
-
-        while (left <= right) {
-            long mid = (left + right) >>> 1;
-
-            long keyPos = MemoryAccess.getLongAtOffset(sstable, INDEX_HEADER_SIZE + mid * INDEX_RECORD_SIZE);
-            long keySize = MemoryAccess.getLongAtOffset(sstable, keyPos);
-
-            MemorySegment keyForCheck = sstable.asSlice(keyPos + Long.BYTES, keySize);
-            int comparedResult = MemorySegmentComparator.INSTANCE.compare(key, keyForCheck);
-            if (comparedResult > 0) {
-                left = mid + 1;
-            } else if (comparedResult < 0) {
-                right = mid - 1;
-            } else {
-                return mid;
-            }
-        }
-
-        return ~left;
-    }
-
-    private Entry<MemorySegment> entryAt(MemorySegment sstable, long keyIndex) {
-        long offset = MemoryAccess.getLongAtOffset(sstable, INDEX_HEADER_SIZE + keyIndex * INDEX_RECORD_SIZE);
-        long keySize = MemoryAccess.getLongAtOffset(sstable, offset);
-        long valueOffset = offset + Long.BYTES + keySize;
-        long valueSize = MemoryAccess.getLongAtOffset(sstable, valueOffset);
-        return new BaseEntry<>(
-                sstable.asSlice(offset + Long.BYTES, keySize),
-                valueSize == -1 ? null : sstable.asSlice(valueOffset + Long.BYTES, valueSize)
-        );
+        this.valueLog = valueLog;
     }
 
     public Entry<MemorySegment> get(MemorySegment key) {
+        long keyHash = BloomFilter.hash(key);
         for (int i = sstables.size() - 1; i >= 0; i--) {
-            MemorySegment sstable = sstables.get(i);
-            long keyFromPos = entryIndex(sstable, key);
-            if (keyFromPos >= 0) {
-                return entryAt(sstable, keyFromPos);
+            Entry<MemorySegment> entry = sstables.get(i).get(key, keyHash);
+            if (entry != null) {
+                return entry;
             }
         }
         return null;
     }
 
-    private Iterator<Entry<MemorySegment>> iterate(MemorySegment sstable, MemorySegment keyFrom, MemorySegment keyTo) {
-        long keyFromPos = greaterOrEqualEntryIndex(sstable, keyFrom);
-        long keyToPos = greaterOrEqualEntryIndex(sstable, keyTo);
-
-        return new Iterator<>() {
-            long pos = keyFromPos;
-
-            @Override
-            public boolean hasNext() {
-                return pos < keyToPos;
-            }
-
-            @Override
-            public Entry<MemorySegment> next() {
-                Entry<MemorySegment> entry = entryAt(sstable, pos);
-                pos++;
-                return entry;
-            }
-        };
-    }
-
     // last is newer
     // it is ok to mutate list after
     public ArrayList<Iterator<Entry<MemorySegment>>> iterate(MemorySegment keyFrom, MemorySegment keyTo) {
         ArrayList<Iterator<Entry<MemorySegment>>> iterators = new ArrayList<>(sstables.size());
-        for (MemorySegment sstable : sstables) {
-            iterators.add(iterate(sstable, keyFrom, keyTo));
+        for (SSTable sstable : sstables) {
+            if (sstable.mayOverlap(keyFrom, keyTo)) {
+                iterators.add(sstable.iterate(keyFrom, keyTo));
+            }
         }
         return iterators;
     }
 
+    // storage is swapped out by flush or compaction, but entries and iterators read from it may still be in use,
+    // so its sstables are unmapped by cleaner of the scope only when none of them is reachable
+    public void retire() {
+        logStats();
+    }
+
+    // unmaps sstables right away, entries and iterators of closed dao are not readable anymore
     @Override
-    public void close() throws IOException {
-        if (scope.isAlive()) {
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            logStats();
             scope.close();
         }
     }
 
+    private void logStats() {
+        for (int i = 0; i < sstables.size(); i++) {
+            SSTable sstable = sstables.get(i);
+            if (sstable.decompressionNanos() > 0) {
+                LOG.info("{}{}{}: compression ratio {}, decompressed in {} ms",
+                        FILE_NAME, i, FILE_EXT,
+                        String.format("%.2f", sstable.compressionRatio()),
+                        TimeUnit.NANOSECONDS.toMillis(sstable.decompressionNanos()));
+            }
+        }
+    }
+
+    // corrupted files are only reported, reads of their broken blocks fail anyway
+    public void verify() {
+        for (int i = 0; i < sstables.size(); i++) {
+            try {
+                sstables.get(i).verify();
+            } catch (IllegalStateException e) {
+                LOG.error("{}{}{} is corrupted", FILE_NAME, i, FILE_EXT, e);
+            }
+        }
+    }
 
-    public boolean isClosed() {
-        return !scope.isAlive();
+    // bytes referenced in every value log by all sstables, shadowed values are counted as alive too
+    private Map<Long, Long> valueLogReferences() {
+        Map<Long, Long> references = new HashMap<>();
+        for (SSTable sstable : sstables) {
+            sstable.valueLogReferences().forEach((logId, bytes) -> references.merge(logId, bytes, Long::sum));
+        }
+        return references;
+    }
+
+    private Set<Long> garbageLogs() {
+        return valueLog.garbage(valueLogReferences());
     }
 
     public boolean isCompacted() {
         if (sstables.isEmpty()) {
             return true;
         }
+        if (!garbageLogs().isEmpty()) {
+            return false;
+        }
         if (sstables.size() > 1) {
             return false;
         }
 
-        // has no tombstones
-        return MemoryAccess.getLongAtOffset(sstables.get(0), 16) == 0;
+        // files of older formats are not upgraded on open, compaction rewrites them in the current one
+        SSTable sstable = sstables.get(0);
+        return sstable.version() == SSTable.CURRENT_VERSION && !sstable.hasTombstone();
+    }
+
+    // logs are replayed into off-heap memtable, it is saved as the next sstable every time it reaches
+    // flush threshold, so replay takes no more memory than dao itself, however many logs are left
+    // sstables saved before crash in the middle of replay are saved once more by the next replay, newer ones win
+    private static final class LogReplay implements Consumer<Entry<MemorySegment>> {
+        private final Config config;
+        private int nextSSTableIndex;
+        private MemTable memory = new MemTable(null);
+
+        LogReplay(Config config, int nextSSTableIndex) {
+            this.config = config;
+            this.nextSSTableIndex = nextSSTableIndex;
+        }
+
+        @Override
+        public void accept(Entry<MemorySegment> entry) {
+            try {
+                if (memory.upsert(entry) >= config.flushThresholdBytes()) {
+                    save();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void save() throws IOException {
+            if (memory.isEmpty()) {
+                return;
+            }
+            Path sstablePath = config.basePath().resolve(FILE_NAME + nextSSTableIndex + FILE_EXT);
+            Storage.save(config, memory::iterator, memory.entryCount(), sstablePath, Set.of());
+            nextSSTableIndex++;
+            memory = new MemTable(null);
+        }
     }
 
     public interface Data {
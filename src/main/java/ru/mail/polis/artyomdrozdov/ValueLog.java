@@ -0,0 +1,166 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// big values are kept out of sstables in value logs, so that compaction copies only pointers to them
+// values of every flush and compaction are appended to the latest log until it grows past MAX_LOG_SIZE,
+// then the next log is started, log collected by compaction is never appended
+// file structure:
+// (value...)
+// sstable stores (logId)(offset)(size) pointer instead of value and counts bytes it references in every log,
+// log with at least GC_DEAD_RATIO of bytes which are referenced by no sstable has its live values moved
+// by the next compaction, log which is not referenced at all is deleted
+class ValueLog {
+
+    static final double GC_DEAD_RATIO = 0.5;
+    static final long MAX_LOG_SIZE = 64L << 20;
+
+    private static final String FILE_NAME = "vlog";
+    private static final String FILE_EXT = ".dat";
+
+    private final Map<Long, MemorySegment> logs = new HashMap<>();
+
+    // maps logs referenced by sstables and deletes the rest, they are either collected or left by failed write
+    void open(Path basePath, ResourceScope scope, Set<Long> referenced) throws IOException {
+        for (long logId : existing(basePath)) {
+            Path file = path(basePath, logId);
+            if (referenced.contains(logId)) {
+                logs.put(logId, MemorySegment.mapFile(file, 0, Files.size(file), FileChannel.MapMode.READ_ONLY, scope));
+            } else {
+                Files.delete(file);
+            }
+        }
+    }
+
+    MemorySegment value(long logId, long offset, long size) {
+        MemorySegment log = logs.get(logId);
+        if (log == null) {
+            throw new IllegalStateException("Value log " + logId + " is missing");
+        }
+        return log.asSlice(offset, size);
+    }
+
+    // logs which values should be moved by compaction, referencedBytes are summed over all sstables
+    Set<Long> garbage(Map<Long, Long> referencedBytes) {
+        Set<Long> garbage = new HashSet<>();
+        for (Map.Entry<Long, MemorySegment> log : logs.entrySet()) {
+            long size = log.getValue().byteSize();
+            long dead = size - referencedBytes.getOrDefault(log.getKey(), 0L);
+            if (size > 0 && dead >= size * GC_DEAD_RATIO) {
+                garbage.add(log.getKey());
+            }
+        }
+        return garbage;
+    }
+
+    static long nextLogId(Path basePath) throws IOException {
+        long next = 0;
+        for (long logId : existing(basePath)) {
+            next = Math.max(next, logId + 1);
+        }
+        return next;
+    }
+
+    private static Set<Long> existing(Path basePath) throws IOException {
+        Set<Long> logIds = new HashSet<>();
+        try (Stream<Path> files = Files.list(basePath)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(ValueLog::isLog)
+                    .forEach(name -> logIds.add(
+                            Long.parseLong(name.substring(FILE_NAME.length(), name.length() - FILE_EXT.length()))
+                    ));
+        }
+        return logIds;
+    }
+
+    private static boolean isLog(String name) {
+        return name.startsWith(FILE_NAME) && name.endsWith(FILE_EXT)
+                && name.length() > FILE_NAME.length() + FILE_EXT.length()
+                && name.substring(FILE_NAME.length(), name.length() - FILE_EXT.length()).chars()
+                .allMatch(Character::isDigit);
+    }
+
+    private static Path path(Path basePath, long logId) {
+        return basePath.resolve(FILE_NAME + logId + FILE_EXT);
+    }
+
+    // decides where values of one sstable go, log file is created only when the first value is separated
+    // previous state may still map the log, its sstables reference only bytes written before
+    static class Writer implements Closeable {
+
+        private final Path basePath;
+        private final long threshold;
+        private final long maxLogSize;
+        private final Set<Long> collected;
+        private long logId;
+        private ChannelWriter log;
+
+        // values of collected logs are written again, pointers to other logs are kept as is
+        Writer(Path basePath, long threshold, long maxLogSize, Set<Long> collected) throws IOException {
+            this.basePath = basePath;
+            this.threshold = threshold;
+            this.maxLogSize = maxLogSize;
+            this.collected = collected;
+
+            long last = nextLogId(basePath) - 1;
+            boolean appendable = last >= 0 && !collected.contains(last)
+                    && Files.size(path(basePath, last)) < maxLogSize;
+            this.logId = appendable ? last : last + 1;
+        }
+
+        boolean keeps(ValueLogEntry entry) {
+            return !collected.contains(entry.logId());
+        }
+
+        boolean separates(MemorySegment value) {
+            return threshold > 0 && value.byteSize() >= threshold;
+        }
+
+        // log of the last appended value
+        long logId() {
+            return logId;
+        }
+
+        // returns offset of the value in log
+        long append(MemorySegment value) throws IOException {
+            if (log != null && log.position() >= maxLogSize) {
+                force();
+                log.close();
+                log = null;
+                logId++;
+            }
+            if (log == null) {
+                log = ChannelWriter.appending(path(basePath, logId));
+            }
+            long offset = log.position();
+            log.write(value);
+            return offset;
+        }
+
+        // log has to reach the disk before sstable which references it
+        void force() throws IOException {
+            if (log != null) {
+                log.force();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.Entry;
+
+// entry which value is stored in value log, compaction may copy only the pointer to it
+record ValueLogEntry(MemorySegment key, MemorySegment value, long logId, long offset) implements Entry<MemorySegment> {
+}
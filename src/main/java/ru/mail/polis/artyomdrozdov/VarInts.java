@@ -0,0 +1,48 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+// unsigned LEB128: 7 bits per byte, the highest bit says that more bytes follow
+// encoding is always minimal, so the size of encoded value can be restored from the value itself
+final class VarInts {
+
+    static final int MAX_SIZE = 10;
+
+    private VarInts() {
+    }
+
+    static int size(long value) {
+        int size = 1;
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            remaining >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static long read(MemorySegment segment, long offset) {
+        long value = 0;
+        long position = offset;
+        for (int shift = 0; ; shift += 7) {
+            byte b = MemoryAccess.getByteAtOffset(segment, position++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    // returns number of written bytes
+    static int write(MemorySegment segment, long offset, long value) {
+        long remaining = value;
+        long position = offset;
+        while ((remaining & ~0x7FL) != 0) {
+            MemoryAccess.setByteAtOffset(segment, position++, (byte) (remaining & 0x7F | 0x80));
+            remaining >>>= 7;
+        }
+        MemoryAccess.setByteAtOffset(segment, position++, (byte) remaining);
+        return (int) (position - offset);
+    }
+}
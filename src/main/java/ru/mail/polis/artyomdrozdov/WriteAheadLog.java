@@ -0,0 +1,225 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// one append-only segment per memtable generation
+// record structure:
+// (crc)(keySize)(valueSize)(key)(value), valueSize is -1 for tombstone, crc covers everything after itself
+class WriteAheadLog implements Closeable {
+
+    private static final String FILE_NAME = "wal";
+    private static final String FILE_EXT = ".log";
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES * 2;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Config.Durability durability;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long appended;
+    private long persisted;
+    private boolean writing;
+    private IOException failure;
+
+    private WriteAheadLog(Path path, FileChannel channel, Config.Durability durability) {
+        this.path = path;
+        this.channel = channel;
+        this.durability = durability;
+    }
+
+    static WriteAheadLog create(Config config, long generation) throws IOException {
+        Path path = config.basePath().resolve(FILE_NAME + generation + FILE_EXT);
+        FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        );
+        return new WriteAheadLog(path, channel, config.durability());
+    }
+
+    // older generations first
+    static List<Path> existing(Config config) throws IOException {
+        try (Stream<Path> files = Files.list(config.basePath())) {
+            return files
+                    .filter(WriteAheadLog::isLog)
+                    .sorted(Comparator.comparingLong(WriteAheadLog::generation))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isLog(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(FILE_NAME) && name.endsWith(FILE_EXT)
+                && name.substring(FILE_NAME.length(), name.length() - FILE_EXT.length()).chars()
+                .allMatch(Character::isDigit);
+    }
+
+    private static long generation(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_NAME.length(), name.length() - FILE_EXT.length()));
+    }
+
+    // entries are slices of the mapped log, they are valid until scope is closed
+    // replay stops silently at the first torn or corrupted record
+    static void replay(Path file, ResourceScope scope, Consumer<Entry<MemorySegment>> consumer) throws IOException {
+        long size = Files.size(file);
+        if (size == 0) {
+            return;
+        }
+        MemorySegment log = MemorySegment.mapFile(file, 0, size, FileChannel.MapMode.READ_ONLY, scope);
+        CRC32C crc = new CRC32C();
+
+        long offset = 0;
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            int checksum = MemoryAccess.getIntAtOffset(log, offset);
+            long keySize = MemoryAccess.getLongAtOffset(log, offset + Integer.BYTES);
+            long valueSize = MemoryAccess.getLongAtOffset(log, offset + Integer.BYTES + Long.BYTES);
+            long keyOffset = offset + RECORD_HEADER_SIZE;
+            long recordEnd = keyOffset + keySize + Math.max(valueSize, 0);
+            if (keySize < 0 || valueSize < -1 || recordEnd > size || recordEnd < keyOffset) {
+                return;
+            }
+
+            crc.reset();
+            crc.update(log.asSlice(offset + Integer.BYTES, recordEnd - offset - Integer.BYTES).asByteBuffer());
+            if ((int) crc.getValue() != checksum) {
+                return;
+            }
+
+            MemorySegment key = log.asSlice(keyOffset, keySize);
+            MemorySegment value = valueSize == -1 ? null : log.asSlice(keyOffset + keySize, valueSize);
+            consumer.accept(new BaseEntry<>(key, value));
+            offset = recordEnd;
+        }
+    }
+
+    void append(Entry<MemorySegment> entry) throws IOException {
+        ByteBuffer record = encode(entry);
+
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            if (durability == Config.Durability.OPERATION) {
+                write(List.of(record), true);
+                return;
+            }
+
+            pending.add(record);
+            long sequence = ++appended;
+            while (persisted < sequence) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (writing) {
+                    written.awaitUninterruptibly();
+                    continue;
+                }
+                writeBatch();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // group commit: the first waiting writer takes everything queued so far and writes it at once
+    // called under lock, releases it for the time of IO
+    private void writeBatch() throws IOException {
+        List<ByteBuffer> batch = pending;
+        long batchEnd = appended;
+        pending = new ArrayList<>();
+        writing = true;
+
+        lock.unlock();
+        IOException error = null;
+        try {
+            write(batch, durability == Config.Durability.BATCH);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+            writing = false;
+            if (error == null) {
+                persisted = batchEnd;
+            } else {
+                failure = error;
+            }
+            written.signalAll();
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void write(List<ByteBuffer> batch, boolean force) throws IOException {
+        ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+        if (force) {
+            channel.force(false);
+        }
+    }
+
+    private static ByteBuffer encode(Entry<MemorySegment> entry) {
+        long keySize = entry.key().byteSize();
+        long valueSize = entry.value() == null ? -1 : entry.value().byteSize();
+        long recordSize = RECORD_HEADER_SIZE + keySize + Math.max(valueSize, 0);
+        if (recordSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Entry is too big for log: " + recordSize);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+        MemorySegment segment = MemorySegment.ofByteBuffer(record);
+        MemoryAccess.setLongAtOffset(segment, Integer.BYTES, keySize);
+        MemoryAccess.setLongAtOffset(segment, Integer.BYTES + Long.BYTES, valueSize);
+        segment.asSlice(RECORD_HEADER_SIZE, keySize).copyFrom(entry.key());
+        if (entry.value() != null) {
+            segment.asSlice(RECORD_HEADER_SIZE + keySize, valueSize).copyFrom(entry.value());
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(record.position(Integer.BYTES));
+        MemoryAccess.setIntAtOffset(segment, 0, (int) crc.getValue());
+        return record.position(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+}
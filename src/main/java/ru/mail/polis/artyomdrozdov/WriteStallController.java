@@ -0,0 +1,79 @@
+package ru.mail.polis.artyomdrozdov;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// delays writers while background flush can not keep up with them
+// backlog is the amount of bytes written to memtable which can not be rotated yet
+class WriteStallController {
+
+    private static final long MAX_SLOWDOWN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long slowdownBytes;
+    private final long stopBytes;
+    private final long timeoutNanos;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final LongAdder stalledNanos = new LongAdder();
+
+    WriteStallController(long flushThresholdBytes, long timeoutMillis) {
+        this.stopBytes = flushThresholdBytes;
+        // writers are slowed down during the last quarter before the hard stop
+        this.slowdownBytes = flushThresholdBytes / 4 * 3;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    void beforeWrite(LongSupplier backlogBytes) {
+        long backlog = backlogBytes.getAsLong();
+        if (backlog < slowdownBytes) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (backlog < stopBytes) {
+            LockSupport.parkNanos(MAX_SLOWDOWN_NANOS * (backlog - slowdownBytes) / (stopBytes - slowdownBytes));
+        } else {
+            awaitFlush(backlogBytes);
+        }
+        stalledNanos.add(System.nanoTime() - start);
+    }
+
+    private void awaitFlush(LongSupplier backlogBytes) {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (backlogBytes.getAsLong() >= stopBytes) {
+                if (remaining <= 0) {
+                    long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+                    throw new IllegalStateException("Write stalled for " + timeoutMillis + " ms, flush is too slow");
+                }
+                remaining = flushed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while write is stalled", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // should be called after backlog is decreased
+    void flushFinished() {
+        lock.lock();
+        try {
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long stalledNanos() {
+        return stalledNanos.sum();
+    }
+}
@@ -0,0 +1,46 @@
+package ru.mail.polis.artyomdrozdov;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// upserts in progress in one memtable, the memtable is sealed before flush reads it:
+// writers which come later are turned away to the next memtable, flush waits for the others to finish
+// writers are counted in padded stripes chosen by thread id, so writers on different cores do not contend
+// for one cache line, thread always enters and exits through the same stripe, so no stripe goes below zero
+final class WriterGate {
+
+    // 128 bytes per stripe, adjacent lines are prefetched in pairs
+    private static final int PADDING = 16;
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    private final AtomicLongArray writers = new AtomicLongArray(STRIPES * PADDING);
+    private volatile boolean sealed;
+
+    // false if memtable is sealed, writer has to take the next one then
+    boolean enter() {
+        int stripe = stripe();
+        writers.getAndIncrement(stripe);
+        if (sealed) {
+            writers.getAndDecrement(stripe);
+            return false;
+        }
+        return true;
+    }
+
+    void exit() {
+        writers.getAndDecrement(stripe());
+    }
+
+    // writers which have entered before the seal are the only ones to wait for, they are not expected to be long
+    void seal() {
+        sealed = true;
+        for (int stripe = 0; stripe < writers.length(); stripe += PADDING) {
+            while (writers.get(stripe) != 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static int stripe() {
+        return (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+    }
+}
@@ -3,6 +3,7 @@ package ru.mail.polis.dmitrykondraev;
 import jdk.incubator.foreign.MemorySegment;
 import ru.mail.polis.Config;
 import ru.mail.polis.Dao;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -26,6 +27,10 @@ import java.util.stream.Stream;
  */
 
 public class FilesBackedDao implements Dao<MemorySegment, MemorySegmentEntry> {
+    /**
+     * For any <code>MemorySegment x</code>: <code>compare(MINIMAL, x) <= 0</code> is true.
+     */
+    private static final MemorySegment MINIMAL = MemorySegment.ofArray(new byte[]{});
     private final ConcurrentNavigableMap<MemorySegment, MemorySegmentEntry> map =
             new ConcurrentSkipListMap<>(MemorySegmentComparator.INSTANCE);
     private final Deque<SortedStringTable> sortedStringTables = new ConcurrentLinkedDeque<>();
@@ -43,7 +48,7 @@ public class FilesBackedDao implements Dao<MemorySegment, MemorySegmentEntry> {
     @Override
     public Iterator<MemorySegmentEntry> get(MemorySegment from, MemorySegment to) throws IOException {
         if (from == null) {
-            return get(MemorySegmentComparator.MINIMAL, to);
+            return get(MINIMAL, to);
         }
         Iterator<MemorySegmentEntry> inMemoryIterator = inMemoryGet(from, to);
         if (sortedStringTables.isEmpty()) {
@@ -13,7 +13,7 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Iterator;
 
-import static ru.mail.polis.dmitrykondraev.MemorySegmentComparator.INSTANCE;
+import static ru.mail.polis.MemorySegmentComparator.INSTANCE;
 
 final class SortedStringTable implements Closeable {
     public static final String INDEX_FILENAME = "index";
@@ -0,0 +1,39 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.MemorySegmentComparator;
+
+// source of MergeCursor: current entry is kept as ranges of larger segments (sstable or key and value of entry
+// in memory), so that moving to the next entry creates no objects
+// valueSize is -1 for tombstone
+abstract class EntryCursor {
+
+    MemorySegment keySegment;
+    long keyOffset;
+    long keySize;
+    MemorySegment valueSegment;
+    long valueOffset;
+    long valueSize;
+
+    // false if there are no more entries, fields of the current entry are undefined then
+    abstract boolean advance();
+
+    final MemorySegment key() {
+        return slice(keySegment, keyOffset, keySize);
+    }
+
+    final MemorySegment value() {
+        return valueSize == -1 ? null : slice(valueSegment, valueOffset, valueSize);
+    }
+
+    final int compareKeys(EntryCursor other) {
+        return MemorySegmentComparator.compare(
+                keySegment, keyOffset, keySize,
+                other.keySegment, other.keyOffset, other.keySize
+        );
+    }
+
+    private static MemorySegment slice(MemorySegment segment, long offset, long size) {
+        return offset == 0 && size == segment.byteSize() ? segment : segment.asSlice(offset, size);
+    }
+}
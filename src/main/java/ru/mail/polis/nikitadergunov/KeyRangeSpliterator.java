@@ -0,0 +1,93 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.Entry;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+// range [from, to) with split keys inside it, splitting halves the keys, so every part gets its own merge
+// over memory and all sstables and parts are read in parallel
+// split keys are sampled from sstables (see Storage.splitKeys), so parts have about the same number of entries
+final class KeyRangeSpliterator implements Spliterator<Entry<MemorySegment>> {
+
+    private final MemorySegmentDao dao;
+    private final MemorySegment to;
+    private final List<MemorySegment> splitKeys;
+    private final int end;
+    private final long entriesPerPart;
+    private MemorySegment from;
+    // split keys [first, end) are inside of current range
+    private int first;
+    // created by the first advance, the range can not be split then
+    private Iterator<Entry<MemorySegment>> iterator;
+
+    KeyRangeSpliterator(MemorySegmentDao dao, MemorySegment from, MemorySegment to,
+                        List<MemorySegment> splitKeys, long entryCount) {
+        this(dao, from, to, splitKeys, 0, splitKeys.size(), entryCount / (splitKeys.size() + 1));
+    }
+
+    private KeyRangeSpliterator(MemorySegmentDao dao, MemorySegment from, MemorySegment to,
+                                List<MemorySegment> splitKeys, int first, int end, long entriesPerPart) {
+        this.dao = dao;
+        this.from = from;
+        this.to = to;
+        this.splitKeys = splitKeys;
+        this.first = first;
+        this.end = end;
+        this.entriesPerPart = entriesPerPart;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Entry<MemorySegment>> action) {
+        if (iterator == null) {
+            iterator = dao.get(from, to);
+        }
+        if (!iterator.hasNext()) {
+            return false;
+        }
+        action.accept(iterator.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Entry<MemorySegment>> action) {
+        if (iterator == null) {
+            iterator = dao.get(from, to);
+        }
+        iterator.forEachRemaining(action);
+    }
+
+    @Override
+    public Spliterator<Entry<MemorySegment>> trySplit() {
+        if (iterator != null || first == end) {
+            return null;
+        }
+        int middle = (first + end) >>> 1;
+        MemorySegment splitKey = splitKeys.get(middle);
+        KeyRangeSpliterator prefix = new KeyRangeSpliterator(
+                dao, from, splitKey, splitKeys, first, middle, entriesPerPart
+        );
+        from = splitKey;
+        first = middle + 1;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return entriesPerPart * (end - first + 1);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SORTED | NONNULL;
+    }
+
+    @Override
+    public Comparator<? super Entry<MemorySegment>> getComparator() {
+        return EntryKeyComparator.INSTANCE;
+    }
+}
@@ -0,0 +1,177 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+import java.util.Arrays;
+
+// piecewise linear model from key to its entry index, keys are taken as 8 bytes following
+// the prefix common for all keys of sstable (see Storage.keyPrefix)
+// segments are fitted over the first entry of every distinct key prefix,
+// prediction for such entries is never wrong by more than epsilon
+// model structure:
+// ((firstPrefix/firstIndex/slope)...)(keyOffset)(epsilon)(segmentCount)
+final class LearnedIndex {
+
+    static final long DEFAULT_EPSILON = 32;
+
+    private static final int SEGMENT_SIZE = Long.BYTES * 3;
+    private static final int TRAILER_SIZE = Long.BYTES * 3;
+
+    private final long keyOffset;
+    private final long epsilon;
+    private final long[] firstPrefixes;
+    private final long[] firstIndexes;
+    private final double[] slopes;
+
+    private LearnedIndex(long keyOffset, long epsilon, long[] firstPrefixes, long[] firstIndexes, double[] slopes) {
+        this.keyOffset = keyOffset;
+        this.epsilon = epsilon;
+        this.firstPrefixes = firstPrefixes;
+        this.firstIndexes = firstIndexes;
+        this.slopes = slopes;
+    }
+
+    // model ends exactly at the given offset
+    static LearnedIndex read(MemorySegment sstable, long end) {
+        long segmentCount = MemoryAccess.getLongAtOffset(sstable, end - Long.BYTES);
+        long epsilon = MemoryAccess.getLongAtOffset(sstable, end - Long.BYTES * 2);
+        long keyOffset = MemoryAccess.getLongAtOffset(sstable, end - TRAILER_SIZE);
+
+        long[] firstPrefixes = new long[(int) segmentCount];
+        long[] firstIndexes = new long[(int) segmentCount];
+        double[] slopes = new double[(int) segmentCount];
+        long offset = end - TRAILER_SIZE - segmentCount * SEGMENT_SIZE;
+        for (int i = 0; i < segmentCount; i++) {
+            firstPrefixes[i] = MemoryAccess.getLongAtOffset(sstable, offset);
+            firstIndexes[i] = MemoryAccess.getLongAtOffset(sstable, offset + Long.BYTES);
+            slopes[i] = MemoryAccess.getDoubleAtOffset(sstable, offset + Long.BYTES * 2);
+            offset += SEGMENT_SIZE;
+        }
+        return new LearnedIndex(keyOffset, epsilon, firstPrefixes, firstIndexes, slopes);
+    }
+
+    long byteSize() {
+        return slopes.length * (long) SEGMENT_SIZE + TRAILER_SIZE;
+    }
+
+    void write(MemorySegment sstable, long offset) {
+        long segmentOffset = offset;
+        for (int i = 0; i < slopes.length; i++) {
+            MemoryAccess.setLongAtOffset(sstable, segmentOffset, firstPrefixes[i]);
+            MemoryAccess.setLongAtOffset(sstable, segmentOffset + Long.BYTES, firstIndexes[i]);
+            MemoryAccess.setDoubleAtOffset(sstable, segmentOffset + Long.BYTES * 2, slopes[i]);
+            segmentOffset += SEGMENT_SIZE;
+        }
+        MemoryAccess.setLongAtOffset(sstable, segmentOffset, keyOffset);
+        MemoryAccess.setLongAtOffset(sstable, segmentOffset + Long.BYTES, epsilon);
+        MemoryAccess.setLongAtOffset(sstable, segmentOffset + Long.BYTES * 2, slopes.length);
+    }
+
+    long epsilon() {
+        return epsilon;
+    }
+
+    // approximate index of the first entry with key >= given one, it may be out of [0, entryCount)
+    long predict(MemorySegment key) {
+        long prefix = Storage.keyPrefix(key, keyOffset);
+
+        int left = 0;
+        int right = firstPrefixes.length - 1;
+        while (left <= right) {
+            int mid = (left + right) >>> 1;
+            if (Long.compareUnsigned(firstPrefixes[mid], prefix) <= 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        if (right < 0) {
+            return 0;
+        }
+        return firstIndexes[right] + (long) (slopes[right] * distance(firstPrefixes[right], prefix));
+    }
+
+    // unsigned difference of prefixes, to is not less than from
+    private static double distance(long from, long to) {
+        long distance = to - from;
+        return distance >= 0 ? distance : (distance >>> 1) * 2.0 + (distance & 1);
+    }
+
+    // shrinking cone: segment grows while there is a slope which keeps all its points within epsilon
+    static final class Builder {
+
+        private final long keyOffset;
+        private final long epsilon;
+
+        private long[] firstPrefixes = new long[16];
+        private long[] firstIndexes = new long[16];
+        private double[] slopes = new double[16];
+        private int segmentCount;
+
+        private long lastPrefix;
+        private double minSlope;
+        private double maxSlope;
+
+        Builder(long keyOffset, long epsilon) {
+            this.keyOffset = keyOffset;
+            this.epsilon = epsilon;
+        }
+
+        // entries are added in ascending order of keys
+        void add(MemorySegment key, long index) {
+            long prefix = Storage.keyPrefix(key, keyOffset);
+            if (segmentCount == 0) {
+                startSegment(prefix, index);
+                return;
+            }
+            if (prefix == lastPrefix) {
+                return;
+            }
+            lastPrefix = prefix;
+
+            int segment = segmentCount - 1;
+            double distance = distance(firstPrefixes[segment], prefix);
+            double low = (index - epsilon - firstIndexes[segment]) / distance;
+            double high = (index + epsilon - firstIndexes[segment]) / distance;
+            if (low > maxSlope || high < minSlope) {
+                finishSegment();
+                startSegment(prefix, index);
+                return;
+            }
+            minSlope = Math.max(minSlope, low);
+            maxSlope = Math.min(maxSlope, high);
+        }
+
+        LearnedIndex build() {
+            if (segmentCount > 0) {
+                finishSegment();
+            }
+            return new LearnedIndex(
+                    keyOffset,
+                    epsilon,
+                    Arrays.copyOf(firstPrefixes, segmentCount),
+                    Arrays.copyOf(firstIndexes, segmentCount),
+                    Arrays.copyOf(slopes, segmentCount)
+            );
+        }
+
+        private void startSegment(long prefix, long index) {
+            if (segmentCount == slopes.length) {
+                firstPrefixes = Arrays.copyOf(firstPrefixes, segmentCount * 2);
+                firstIndexes = Arrays.copyOf(firstIndexes, segmentCount * 2);
+                slopes = Arrays.copyOf(slopes, segmentCount * 2);
+            }
+            firstPrefixes[segmentCount] = prefix;
+            firstIndexes[segmentCount] = index;
+            segmentCount++;
+            lastPrefix = prefix;
+            minSlope = 0;
+            maxSlope = Double.POSITIVE_INFINITY;
+        }
+
+        private void finishSegment() {
+            slopes[segmentCount - 1] = maxSlope == Double.POSITIVE_INFINITY ? 0 : (minSlope + maxSlope) / 2;
+        }
+    }
+}
@@ -2,8 +2,10 @@ package ru.mail.polis.nikitadergunov;
 
 import jdk.incubator.foreign.MemorySegment;
 import ru.mail.polis.Config;
+import ru.mail.polis.Cursor;
 import ru.mail.polis.Dao;
 import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -12,13 +14,18 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class MemorySegmentDao implements Dao<MemorySegment, Entry<MemorySegment>> {
 
     private static final MemorySegment VERY_FIRST_KEY = MemorySegment.ofArray(new byte[]{});
 
+    private static final int PARTS_PER_THREAD = 4;
+
     private final ConcurrentNavigableMap<MemorySegment, Entry<MemorySegment>> memory =
             new ConcurrentSkipListMap<>(MemorySegmentComparator.INSTANCE);
 
@@ -48,6 +55,35 @@ public class MemorySegmentDao implements Dao<MemorySegment, Entry<MemorySegment>
         return new TombstoneFilteringIterator(mergeIterator);
     }
 
+    @Override
+    public Cursor<MemorySegment> cursor(MemorySegment from, MemorySegment to) {
+        MemorySegment copyFrom = from;
+        if (from == null) {
+            copyFrom = VERY_FIRST_KEY;
+        }
+
+        List<EntryCursor> cursors = new ArrayList<>();
+        cursors.add(new MemoryCursor(getMemoryIterator(copyFrom, to)));
+        cursors.addAll(storage.cursors(copyFrom, to));
+
+        return new MergeCursor(cursors);
+    }
+
+    // range is split by keys sampled from sstables, several parts per thread of pool let faster threads
+    // take more of them, entries of memory are neither sampled nor counted in size estimate
+    @Override
+    public Stream<Entry<MemorySegment>> stream(MemorySegment from, MemorySegment to) {
+        MemorySegment copyFrom = from;
+        if (from == null) {
+            copyFrom = VERY_FIRST_KEY;
+        }
+
+        int parts = ForkJoinPool.getCommonPoolParallelism() * PARTS_PER_THREAD;
+        List<MemorySegment> splitKeys = storage.splitKeys(copyFrom, to, parts);
+        long entryCount = storage.entryCount(copyFrom, to);
+        return StreamSupport.stream(new KeyRangeSpliterator(this, copyFrom, to, splitKeys, entryCount), false);
+    }
+
     private Iterator<Entry<MemorySegment>> getMemoryIterator(MemorySegment from, MemorySegment to) {
         lock.readLock().lock();
         try {
@@ -112,6 +148,28 @@ public class MemorySegmentDao implements Dao<MemorySegment, Entry<MemorySegment>
 
     }
 
+    // entries of memory are already there, only their segments are taken
+    static class MemoryCursor extends EntryCursor {
+        private final Iterator<Entry<MemorySegment>> iterator;
+
+        MemoryCursor(Iterator<Entry<MemorySegment>> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        boolean advance() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            Entry<MemorySegment> entry = iterator.next();
+            keySegment = entry.key();
+            keySize = keySegment.byteSize();
+            valueSegment = entry.value();
+            valueSize = valueSegment == null ? -1 : valueSegment.byteSize();
+            return true;
+        }
+    }
+
     static class TombstoneFilteringIterator implements Iterator<Entry<MemorySegment>> {
         private final Iterator<Entry<MemorySegment>> iterator;
         private Entry<MemorySegment> current;
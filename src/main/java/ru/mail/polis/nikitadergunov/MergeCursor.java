@@ -0,0 +1,133 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.Cursor;
+
+import java.util.List;
+
+// the same entries as TombstoneFilteringIterator over MergeIterator, but without objects per entry:
+// sources are kept in binary heap of their indexes, among equal keys the source with lesser index wins
+// and the others are skipped, tombstones are skipped too
+// the current source is taken out of heap and advanced only by the next call of next(),
+// so key and value are read right from sstable or memory
+final class MergeCursor implements Cursor<MemorySegment> {
+
+    private final EntryCursor[] sources;
+    private final int[] heap;
+    private int heapSize;
+    // -1 before the first entry and after the last one
+    private int current = -1;
+
+    MergeCursor(List<EntryCursor> sources) {
+        this.sources = sources.toArray(new EntryCursor[0]);
+        this.heap = new int[this.sources.length];
+        for (int i = 0; i < this.sources.length; i++) {
+            if (this.sources[i].advance()) {
+                heap[heapSize] = i;
+                siftUp(heapSize++);
+            }
+        }
+    }
+
+    @Override
+    public boolean next() {
+        int winner = current < 0 ? pop() : advance(current);
+        current = -1;
+        while (winner >= 0) {
+            EntryCursor entry = sources[winner];
+            // the same key in sources of greater index is outdated
+            while (heapSize > 0 && sources[heap[0]].compareKeys(entry) == 0) {
+                advanceTop();
+            }
+            if (entry.valueSize != -1) {
+                current = winner;
+                return true;
+            }
+            winner = advance(winner);
+        }
+        return false;
+    }
+
+    @Override
+    public MemorySegment key() {
+        return sources[current].key();
+    }
+
+    @Override
+    public MemorySegment value() {
+        return sources[current].value();
+    }
+
+    // advances source which is out of heap and takes out the one which goes first then, -1 if all are exhausted
+    // long runs of a single source do not touch heap at all
+    private int advance(int source) {
+        if (!sources[source].advance()) {
+            return pop();
+        }
+        if (heapSize == 0 || !goesBefore(heap[0], source)) {
+            return source;
+        }
+        int winner = heap[0];
+        heap[0] = source;
+        siftDown(0);
+        return winner;
+    }
+
+    private void advanceTop() {
+        if (!sources[heap[0]].advance()) {
+            heap[0] = heap[--heapSize];
+        }
+        siftDown(0);
+    }
+
+    private int pop() {
+        if (heapSize == 0) {
+            return -1;
+        }
+        int top = heap[0];
+        heap[0] = heap[--heapSize];
+        siftDown(0);
+        return top;
+    }
+
+    private void siftUp(int position) {
+        int node = position;
+        while (node > 0) {
+            int parent = (node - 1) / 2;
+            if (!goesBefore(heap[node], heap[parent])) {
+                return;
+            }
+            swap(node, parent);
+            node = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        int node = position;
+        while (true) {
+            int child = node * 2 + 1;
+            if (child >= heapSize) {
+                return;
+            }
+            if (child + 1 < heapSize && goesBefore(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!goesBefore(heap[child], heap[node])) {
+                return;
+            }
+            swap(node, child);
+            node = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int source = heap[i];
+        heap[i] = heap[j];
+        heap[j] = source;
+    }
+
+    private boolean goesBefore(int source, int other) {
+        int result = sources[source].compareKeys(sources[other]);
+        return result < 0 || result == 0 && source < other;
+    }
+}
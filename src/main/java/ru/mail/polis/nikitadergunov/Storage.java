@@ -6,10 +6,12 @@ import jdk.incubator.foreign.ResourceScope;
 import ru.mail.polis.BaseEntry;
 import ru.mail.polis.Config;
 import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
@@ -25,9 +27,15 @@ import java.util.stream.Stream;
 
 final class Storage implements Closeable {
 
-    private static final long VERSION = 0;
+    private static final long VERSION = 3;
+    private static final long VERSION_WITHOUT_PREFIXES = 0;
+    private static final long VERSION_WITHOUT_PARTITIONS = 1;
+    private static final long VERSION_WITH_LEARNED_INDEX = 2;
     private static final int INDEX_HEADER_SIZE = Long.BYTES * 2;
-    private static final int INDEX_RECORD_SIZE = Long.BYTES;
+    private static final int INDEX_RECORD_SIZE = Long.BYTES * 2;
+    private static final int INDEX_RECORD_SIZE_WITHOUT_PREFIXES = Long.BYTES;
+
+    private static final int SAMPLES_PER_PART = 8;
 
     private static final String FILE_NAME = "data";
     private static final String FILE_EXT = ".dat";
@@ -39,11 +47,17 @@ final class Storage implements Closeable {
 
     private final ResourceScope scope;
     private final List<MemorySegment> sstables;
+    // null for sstables without learned index
+    private final List<LearnedIndex> learnedIndexes;
+    // null for sstables without top level of index or with too few partitions to use it
+    private final List<TopLevelIndex> topLevelIndexes;
 
     static Storage load(Config config) throws IOException {
         Path basePath = config.basePath();
 
         List<MemorySegment> sstables = new ArrayList<>();
+        List<LearnedIndex> learnedIndexes = new ArrayList<>();
+        List<TopLevelIndex> topLevelIndexes = new ArrayList<>();
         ResourceScope scope = ResourceScope.newSharedScope();
 
         try (Stream<Path> streamFiles = Files.list(basePath)) {
@@ -56,14 +70,17 @@ final class Storage implements Closeable {
             }
             listFiles.forEach(path -> {
                 try {
-                    sstables.add(mapForRead(scope, path));
+                    MemorySegment sstable = mapForRead(scope, path);
+                    sstables.add(sstable);
+                    learnedIndexes.add(readLearnedIndex(sstable));
+                    topLevelIndexes.add(readTopLevelIndex(sstable));
                 } catch (IOException e) {
                     throw new UncheckedIOException(e);
                 }
             });
         }
 
-        return new Storage(scope, sstables);
+        return new Storage(scope, sstables, learnedIndexes, topLevelIndexes);
     }
 
     static void compact(Config config,
@@ -71,7 +88,7 @@ final class Storage implements Closeable {
                         Iterator<Entry<MemorySegment>> entriesIterator,
                         ConcurrentNavigableMap<MemorySegment, Entry<MemorySegment>> memory) throws IOException {
 
-        if (memory.isEmpty() && previousState.sstables.size() < 2) {
+        if (memory.isEmpty() && previousState.isCompacted(config)) {
             return;
         }
 
@@ -122,18 +139,43 @@ final class Storage implements Closeable {
 
         try (ResourceScope writeScope = ResourceScope.newConfinedScope()) {
             long size = 0;
+            MemorySegment firstKey = null;
+            MemorySegment lastKey = null;
             for (Entry<MemorySegment> entry : entries) {
                 if (entry.value() == null) {
                     size += Long.BYTES + entry.key().byteSize() + Long.BYTES;
                 } else {
                     size += Long.BYTES + entry.value().byteSize() + entry.key().byteSize() + Long.BYTES;
                 }
+                if (firstKey == null) {
+                    firstKey = entry.key();
+                }
+                lastKey = entry.key();
+            }
+
+            long mismatch = firstKey.mismatch(lastKey);
+            MemorySegment commonPrefix = firstKey.asSlice(0, mismatch == -1 ? firstKey.byteSize() : mismatch);
+
+            LearnedIndex learnedIndex = null;
+            TopLevelIndex topLevelIndex = null;
+            if (config.learnedIndex()) {
+                LearnedIndex.Builder builder = new LearnedIndex.Builder(
+                        commonPrefix.byteSize(),
+                        LearnedIndex.DEFAULT_EPSILON
+                );
+                long index = 0;
+                for (Entry<MemorySegment> entry : entries) {
+                    builder.add(entry.key(), index++);
+                }
+                learnedIndex = builder.build();
+            } else {
+                topLevelIndex = TopLevelIndex.create(commonPrefix, TopLevelIndex.DEFAULT_PARTITION_SIZE, entriesCount);
             }
 
             MemorySegment nextSSTable = MemorySegment.mapFile(
                     sstableTmpPath,
                     0,
-                    dataStart + size,
+                    dataStart + size + (learnedIndex == null ? topLevelIndex.byteSize() : learnedIndex.byteSize()),
                     FileChannel.MapMode.READ_WRITE,
                     writeScope
             );
@@ -141,7 +183,12 @@ final class Storage implements Closeable {
             long index = 0;
             long offset = dataStart;
             for (Entry<MemorySegment> entry : entries) {
-                MemoryAccess.setLongAtOffset(nextSSTable, INDEX_HEADER_SIZE + index * INDEX_RECORD_SIZE, offset);
+                long indexRecordOffset = INDEX_HEADER_SIZE + index * INDEX_RECORD_SIZE;
+                MemoryAccess.setLongAtOffset(nextSSTable, indexRecordOffset, offset);
+                MemoryAccess.setLongAtOffset(nextSSTable, indexRecordOffset + Long.BYTES, keyPrefix(entry.key(), 0));
+                if (topLevelIndex != null) {
+                    topLevelIndex.add(entry.key(), index);
+                }
 
                 offset += writeRecord(nextSSTable, offset, entry.key());
                 offset += writeRecord(nextSSTable, offset, entry.value());
@@ -149,7 +196,13 @@ final class Storage implements Closeable {
                 index++;
             }
 
-            MemoryAccess.setLongAtOffset(nextSSTable, 0, VERSION);
+            if (learnedIndex == null) {
+                topLevelIndex.write(nextSSTable, offset);
+            } else {
+                learnedIndex.write(nextSSTable, offset);
+            }
+
+            MemoryAccess.setLongAtOffset(nextSSTable, 0, currentVersion(config));
             MemoryAccess.setLongAtOffset(nextSSTable, Long.BYTES, entriesCount);
 
             nextSSTable.force();
@@ -159,6 +212,21 @@ final class Storage implements Closeable {
         maxPriorityFile++;
     }
 
+    // 8 bytes of key starting from offset in big-endian order, shorter keys are padded with zeroes,
+    // so unsigned comparison of prefixes of keys with common first offset bytes never contradicts
+    // MemorySegmentComparator
+    static long keyPrefix(MemorySegment key, long offset) {
+        if (key.byteSize() >= offset + Long.BYTES) {
+            return MemoryAccess.getLongAtOffset(key, offset, ByteOrder.BIG_ENDIAN);
+        }
+        long prefix = 0;
+        for (long i = offset; i < offset + Long.BYTES; i++) {
+            long b = i < key.byteSize() ? MemoryAccess.getByteAtOffset(key, i) & 0xFFL : 0;
+            prefix = prefix << Byte.SIZE | b;
+        }
+        return prefix;
+    }
+
     private static long writeRecord(MemorySegment nextSSTable, long offset, MemorySegment record) {
         if (record == null) {
             MemoryAccess.setLongAtOffset(nextSSTable, offset, -1);
@@ -184,13 +252,17 @@ final class Storage implements Closeable {
                 file.length() - FILE_EXT.length()));
     }
 
-    private Storage(ResourceScope scope, List<MemorySegment> sstables) {
+    private Storage(ResourceScope scope, List<MemorySegment> sstables,
+                    List<LearnedIndex> learnedIndexes, List<TopLevelIndex> topLevelIndexes) {
         this.scope = scope;
         this.sstables = sstables;
+        this.learnedIndexes = learnedIndexes;
+        this.topLevelIndexes = topLevelIndexes;
     }
 
-    private long greaterOrEqualEntryIndex(MemorySegment sstable, MemorySegment key) {
-        long index = entryIndex(sstable, key);
+    private long greaterOrEqualEntryIndex(MemorySegment sstable, LearnedIndex learnedIndex,
+                                          TopLevelIndex topLevelIndex, MemorySegment key) {
+        long index = entryIndex(sstable, learnedIndex, topLevelIndex, key);
         if (index < 0) {
             return ~index;
         }
@@ -198,28 +270,109 @@ final class Storage implements Closeable {
     }
 
     // file structure:
-    // (fileVersion)(entryCount)((entryPosition)...)|((keySize/key/valueSize/value)...)
-    private long entryIndex(MemorySegment sstable, MemorySegment key) {
+    // (fileVersion)(entryCount)((entryPosition/keyPrefix)...)|((keySize/key/valueSize/value)...)|(topLevelIndex)
+    // files of version 0 have no keyPrefix in index records, files of versions 0 and 1 have no top level index,
+    // they are rewritten by compaction
+    // files of version 2 have learned index (see LearnedIndex) instead of top level index (see TopLevelIndex)
+    private static int indexRecordSize(MemorySegment sstable) {
         long fileVersion = MemoryAccess.getLongAtOffset(sstable, 0);
-        if (fileVersion != 0) {
-            throw new IllegalStateException("Unknown file version: " + fileVersion);
+        if (fileVersion == VERSION || fileVersion == VERSION_WITHOUT_PARTITIONS
+                || fileVersion == VERSION_WITH_LEARNED_INDEX) {
+            return INDEX_RECORD_SIZE;
         }
+        if (fileVersion == VERSION_WITHOUT_PREFIXES) {
+            return INDEX_RECORD_SIZE_WITHOUT_PREFIXES;
+        }
+        throw new IllegalStateException("Unknown file version: " + fileVersion);
+    }
+
+    // version which save writes with this config
+    private static long currentVersion(Config config) {
+        return config.learnedIndex() ? VERSION_WITH_LEARNED_INDEX : VERSION;
+    }
+
+    // single sstable is not merged with anything, but it is still rewritten by compaction
+    // if it is of older version or has the other kind of index than config asks for
+    private boolean isCompacted(Config config) {
+        return sstables.isEmpty()
+                || sstables.size() == 1 && MemoryAccess.getLongAtOffset(sstables.get(0), 0) == currentVersion(config);
+    }
+
+    private static LearnedIndex readLearnedIndex(MemorySegment sstable) {
+        long fileVersion = MemoryAccess.getLongAtOffset(sstable, 0);
+        return fileVersion == VERSION_WITH_LEARNED_INDEX ? LearnedIndex.read(sstable, sstable.byteSize()) : null;
+    }
+
+    private static TopLevelIndex readTopLevelIndex(MemorySegment sstable) {
+        long fileVersion = MemoryAccess.getLongAtOffset(sstable, 0);
+        if (fileVersion != VERSION
+                || TopLevelIndex.partitionCount(sstable, sstable.byteSize()) < TopLevelIndex.MIN_PARTITION_COUNT) {
+            return null;
+        }
+        return TopLevelIndex.read(sstable, sstable.byteSize());
+    }
+
+    private long entryIndex(MemorySegment sstable, LearnedIndex learnedIndex, TopLevelIndex topLevelIndex,
+                            MemorySegment key) {
+        int indexRecordSize = indexRecordSize(sstable);
         long recordsCount = MemoryAccess.getLongAtOffset(sstable, 8);
         if (key == null) {
             return recordsCount;
         }
+        if (topLevelIndex != null) {
+            long partitions = topLevelIndex.partitions(key);
+            long partitionSize = topLevelIndex.partitionSize();
+            long from = Math.min(TopLevelIndex.firstPartition(partitions) * partitionSize, recordsCount);
+            long to = Math.min(TopLevelIndex.endPartition(partitions) * partitionSize, recordsCount);
+            return entryIndex(sstable, indexRecordSize, key, from, to - 1);
+        }
+        if (learnedIndex == null) {
+            return entryIndex(sstable, indexRecordSize, key, 0, recordsCount - 1);
+        }
 
-        long left = 0;
-        long right = recordsCount - 1;
+        // prediction is searched within error bounds first,
+        // if the key turns out to be outside of them the rest of index is searched as usual
+        long predicted = Math.max(0, Math.min(learnedIndex.predict(key), recordsCount));
+        long left = Math.max(0, predicted - learnedIndex.epsilon() - 1);
+        long right = Math.min(recordsCount - 1, predicted + learnedIndex.epsilon() + 1);
+
+        long index = entryIndex(sstable, indexRecordSize, key, left, right);
+        if (index >= 0) {
+            return index;
+        }
+        if (~index == left && left > 0) {
+            return entryIndex(sstable, indexRecordSize, key, 0, left - 1);
+        }
+        if (~index == right + 1 && right < recordsCount - 1) {
+            return entryIndex(sstable, indexRecordSize, key, right + 1, recordsCount - 1);
+        }
+        return index;
+    }
+
+    // binary search in [from, to], returns index of the key or ~(index of the first greater key)
+    private long entryIndex(MemorySegment sstable, int indexRecordSize, MemorySegment key, long from, long to) {
+        boolean hasPrefixes = indexRecordSize == INDEX_RECORD_SIZE;
+        long prefix = hasPrefixes ? keyPrefix(key, 0) : 0;
+        long left = from;
+        long right = to;
 
         while (left <= right) {
             long mid = (left + right) >>> 1;
 
-            long keyPos = MemoryAccess.getLongAtOffset(sstable, INDEX_HEADER_SIZE + mid * INDEX_RECORD_SIZE);
-            long keySize = MemoryAccess.getLongAtOffset(sstable, keyPos);
+            long indexRecordOffset = INDEX_HEADER_SIZE + mid * indexRecordSize;
+            int comparedResult = 0;
+            if (hasPrefixes) {
+                long prefixForCheck = MemoryAccess.getLongAtOffset(sstable, indexRecordOffset + Long.BYTES);
+                comparedResult = Long.compareUnsigned(prefix, prefixForCheck);
+            }
+            if (comparedResult == 0) {
+                // prefixes are equal, only now the key itself is read from data area
+                long keyPos = MemoryAccess.getLongAtOffset(sstable, indexRecordOffset);
+                long keySize = MemoryAccess.getLongAtOffset(sstable, keyPos);
 
-            MemorySegment keyForCheck = sstable.asSlice(keyPos + Long.BYTES, keySize);
-            int comparedResult = MemorySegmentComparator.INSTANCE.compare(key, keyForCheck);
+                MemorySegment keyForCheck = sstable.asSlice(keyPos + Long.BYTES, keySize);
+                comparedResult = MemorySegmentComparator.INSTANCE.compare(key, keyForCheck);
+            }
             if (comparedResult > 0) {
                 left = mid + 1;
             } else if (comparedResult < 0) {
@@ -233,7 +386,7 @@ final class Storage implements Closeable {
     }
 
     private Entry<MemorySegment> entryAt(MemorySegment sstable, long keyIndex) {
-        long offset = MemoryAccess.getLongAtOffset(sstable, INDEX_HEADER_SIZE + keyIndex * INDEX_RECORD_SIZE);
+        long offset = MemoryAccess.getLongAtOffset(sstable, INDEX_HEADER_SIZE + keyIndex * indexRecordSize(sstable));
         long keySize = MemoryAccess.getLongAtOffset(sstable, offset);
         long valueOffset = offset + Long.BYTES + keySize;
         long valueSize = MemoryAccess.getLongAtOffset(sstable, valueOffset);
@@ -243,9 +396,11 @@ final class Storage implements Closeable {
         );
     }
 
-    private Iterator<Entry<MemorySegment>> iterate(MemorySegment sstable, MemorySegment keyFrom, MemorySegment keyTo) {
-        long keyFromPos = greaterOrEqualEntryIndex(sstable, keyFrom);
-        long keyToPos = greaterOrEqualEntryIndex(sstable, keyTo);
+    private Iterator<Entry<MemorySegment>> iterate(MemorySegment sstable, LearnedIndex learnedIndex,
+                                                   TopLevelIndex topLevelIndex,
+                                                   MemorySegment keyFrom, MemorySegment keyTo) {
+        long keyFromPos = greaterOrEqualEntryIndex(sstable, learnedIndex, topLevelIndex, keyFrom);
+        long keyToPos = greaterOrEqualEntryIndex(sstable, learnedIndex, topLevelIndex, keyTo);
 
         return new Iterator<>() {
             long pos = keyFromPos;
@@ -264,10 +419,40 @@ final class Storage implements Closeable {
         };
     }
 
+    private static final class SSTableCursor extends EntryCursor {
+
+        private final int indexRecordSize;
+        private final long end;
+        private long pos;
+
+        SSTableCursor(MemorySegment sstable, long from, long to) {
+            this.keySegment = sstable;
+            this.valueSegment = sstable;
+            this.indexRecordSize = indexRecordSize(sstable);
+            this.pos = from;
+            this.end = to;
+        }
+
+        @Override
+        boolean advance() {
+            if (pos >= end) {
+                return false;
+            }
+            long offset = MemoryAccess.getLongAtOffset(keySegment, INDEX_HEADER_SIZE + pos * indexRecordSize);
+            keyOffset = offset + Long.BYTES;
+            keySize = MemoryAccess.getLongAtOffset(keySegment, offset);
+            valueOffset = keyOffset + keySize + Long.BYTES;
+            valueSize = MemoryAccess.getLongAtOffset(keySegment, keyOffset + keySize);
+            pos++;
+            return true;
+        }
+    }
+
     public Entry<MemorySegment> get(MemorySegment key) {
         long keyFromPos;
-        for (MemorySegment sstable : sstables) {
-            keyFromPos = entryIndex(sstable, key);
+        for (int i = 0; i < sstables.size(); i++) {
+            MemorySegment sstable = sstables.get(i);
+            keyFromPos = entryIndex(sstable, learnedIndexes.get(i), topLevelIndexes.get(i), key);
             if (keyFromPos >= 0) {
                 return entryAt(sstable, keyFromPos);
             }
@@ -277,12 +462,78 @@ final class Storage implements Closeable {
 
     public List<Iterator<Entry<MemorySegment>>> iterate(MemorySegment keyFrom, MemorySegment keyTo) {
         List<Iterator<Entry<MemorySegment>>> iterators = new ArrayList<>(sstables.size());
-        for (MemorySegment sstable : sstables) {
-            iterators.add(iterate(sstable, keyFrom, keyTo));
+        for (int i = 0; i < sstables.size(); i++) {
+            iterators.add(iterate(sstables.get(i), learnedIndexes.get(i), topLevelIndexes.get(i), keyFrom, keyTo));
         }
         return iterators;
     }
 
+    // upper bound of number of entries in range, entries of different sstables may have the same key
+    public long entryCount(MemorySegment keyFrom, MemorySegment keyTo) {
+        long count = 0;
+        for (int i = 0; i < sstables.size(); i++) {
+            MemorySegment sstable = sstables.get(i);
+            LearnedIndex learnedIndex = learnedIndexes.get(i);
+            TopLevelIndex topLevelIndex = topLevelIndexes.get(i);
+            count += greaterOrEqualEntryIndex(sstable, learnedIndex, topLevelIndex, keyTo)
+                    - greaterOrEqualEntryIndex(sstable, learnedIndex, topLevelIndex, keyFrom);
+        }
+        return count;
+    }
+
+    // ascending keys inside of (keyFrom, keyTo) which split it into at most parts ranges of about the same
+    // number of entries: keys are sampled from index of every sstable with the same step,
+    // so larger sstables get more samples, and every (samples / parts)-th of them is taken
+    public List<MemorySegment> splitKeys(MemorySegment keyFrom, MemorySegment keyTo, int parts) {
+        long[] fromPositions = new long[sstables.size()];
+        long[] toPositions = new long[sstables.size()];
+        long count = 0;
+        for (int i = 0; i < sstables.size(); i++) {
+            MemorySegment sstable = sstables.get(i);
+            LearnedIndex learnedIndex = learnedIndexes.get(i);
+            TopLevelIndex topLevelIndex = topLevelIndexes.get(i);
+            fromPositions[i] = greaterOrEqualEntryIndex(sstable, learnedIndex, topLevelIndex, keyFrom);
+            toPositions[i] = greaterOrEqualEntryIndex(sstable, learnedIndex, topLevelIndex, keyTo);
+            count += toPositions[i] - fromPositions[i];
+        }
+
+        long step = Math.max(1, count / ((long) parts * SAMPLES_PER_PART));
+        List<MemorySegment> samples = new ArrayList<>();
+        for (int i = 0; i < sstables.size(); i++) {
+            // the first entry of range is skipped, so samples are greater than keyFrom
+            for (long pos = fromPositions[i] + step; pos < toPositions[i]; pos += step) {
+                samples.add(entryAt(sstables.get(i), pos).key());
+            }
+        }
+        samples.sort(MemorySegmentComparator.INSTANCE);
+
+        List<MemorySegment> splitKeys = new ArrayList<>(parts);
+        for (int part = 1; part < parts && !samples.isEmpty(); part++) {
+            MemorySegment key = samples.get((int) ((long) samples.size() * part / parts));
+            if (splitKeys.isEmpty()
+                    || MemorySegmentComparator.INSTANCE.compare(splitKeys.get(splitKeys.size() - 1), key) < 0) {
+                splitKeys.add(key);
+            }
+        }
+        return splitKeys;
+    }
+
+    // the same entries as iterate, but read in place (see EntryCursor)
+    public List<EntryCursor> cursors(MemorySegment keyFrom, MemorySegment keyTo) {
+        List<EntryCursor> cursors = new ArrayList<>(sstables.size());
+        for (int i = 0; i < sstables.size(); i++) {
+            MemorySegment sstable = sstables.get(i);
+            LearnedIndex learnedIndex = learnedIndexes.get(i);
+            TopLevelIndex topLevelIndex = topLevelIndexes.get(i);
+            cursors.add(new SSTableCursor(
+                    sstable,
+                    greaterOrEqualEntryIndex(sstable, learnedIndex, topLevelIndex, keyFrom),
+                    greaterOrEqualEntryIndex(sstable, learnedIndex, topLevelIndex, keyTo)
+            ));
+        }
+        return cursors;
+    }
+
     @Override
     public void close() throws IOException {
         if (scope.isAlive()) {
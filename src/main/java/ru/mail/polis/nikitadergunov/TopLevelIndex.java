@@ -0,0 +1,127 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.MemorySegmentComparator;
+
+// top level of two-level index: index records are split into partitions of partitionSize records,
+// top level keeps prefix of the first key of every partition in heap, so that lookup reads
+// only one or two partitions of index instead of every page on the way of binary search
+// prefixes are taken after the prefix common for all keys of sstable (see Storage.keyPrefix)
+// structure:
+// ((firstKeyPrefix)...)(commonPrefix)(commonPrefixSize)(partitionSize)(partitionCount)
+final class TopLevelIndex {
+
+    // 4 KB of index records
+    static final long DEFAULT_PARTITION_SIZE = 256;
+    // 8M records, 128 MB of index: smaller indexes stay in page cache, and the upper levels
+    // of flat binary search are hot there, so the top level only adds a search of its own
+    static final long MIN_PARTITION_COUNT = 1 << 15;
+
+    private static final int TRAILER_SIZE = Long.BYTES * 3;
+
+    private final MemorySegment commonPrefix;
+    private final long partitionSize;
+    private final long[] firstKeyPrefixes;
+
+    private TopLevelIndex(MemorySegment commonPrefix, long partitionSize, long[] firstKeyPrefixes) {
+        this.commonPrefix = commonPrefix;
+        this.partitionSize = partitionSize;
+        this.firstKeyPrefixes = firstKeyPrefixes;
+    }
+
+    static TopLevelIndex create(MemorySegment commonPrefix, long partitionSize, long entryCount) {
+        long partitionCount = (entryCount + partitionSize - 1) / partitionSize;
+        return new TopLevelIndex(commonPrefix, partitionSize, new long[(int) partitionCount]);
+    }
+
+    // top level ends exactly at the given offset
+    static long partitionCount(MemorySegment sstable, long end) {
+        return MemoryAccess.getLongAtOffset(sstable, end - Long.BYTES);
+    }
+
+    static TopLevelIndex read(MemorySegment sstable, long end) {
+        long partitionCount = partitionCount(sstable, end);
+        long partitionSize = MemoryAccess.getLongAtOffset(sstable, end - Long.BYTES * 2);
+        long commonPrefixSize = MemoryAccess.getLongAtOffset(sstable, end - TRAILER_SIZE);
+
+        long commonPrefixOffset = end - TRAILER_SIZE - commonPrefixSize;
+        MemorySegment commonPrefix = MemorySegment.ofArray(
+                sstable.asSlice(commonPrefixOffset, commonPrefixSize).toByteArray()
+        );
+
+        long[] firstKeyPrefixes = new long[(int) partitionCount];
+        long offset = commonPrefixOffset - partitionCount * Long.BYTES;
+        for (int i = 0; i < partitionCount; i++) {
+            firstKeyPrefixes[i] = MemoryAccess.getLongAtOffset(sstable, offset + (long) i * Long.BYTES);
+        }
+        return new TopLevelIndex(commonPrefix, partitionSize, firstKeyPrefixes);
+    }
+
+    long byteSize() {
+        return (long) firstKeyPrefixes.length * Long.BYTES + commonPrefix.byteSize() + TRAILER_SIZE;
+    }
+
+    // entries are added in ascending order of keys
+    void add(MemorySegment key, long index) {
+        if (index % partitionSize == 0) {
+            firstKeyPrefixes[(int) (index / partitionSize)] = Storage.keyPrefix(key, commonPrefix.byteSize());
+        }
+    }
+
+    void write(MemorySegment sstable, long offset) {
+        long prefixOffset = offset;
+        for (long firstKeyPrefix : firstKeyPrefixes) {
+            MemoryAccess.setLongAtOffset(sstable, prefixOffset, firstKeyPrefix);
+            prefixOffset += Long.BYTES;
+        }
+        sstable.asSlice(prefixOffset, commonPrefix.byteSize()).copyFrom(commonPrefix);
+        long trailerOffset = prefixOffset + commonPrefix.byteSize();
+        MemoryAccess.setLongAtOffset(sstable, trailerOffset, commonPrefix.byteSize());
+        MemoryAccess.setLongAtOffset(sstable, trailerOffset + Long.BYTES, partitionSize);
+        MemoryAccess.setLongAtOffset(sstable, trailerOffset + Long.BYTES * 2, firstKeyPrefixes.length);
+    }
+
+    long partitionSize() {
+        return partitionSize;
+    }
+
+    // partitions [first, end) which may contain key, packed as (first << 32 | end)
+    long partitions(MemorySegment key) {
+        long mismatch = commonPrefix.mismatch(key);
+        if (mismatch != -1 && mismatch != commonPrefix.byteSize()) {
+            // key is less or greater than all keys of sstable
+            int partition = MemorySegmentComparator.INSTANCE.compare(key, commonPrefix) < 0
+                    ? 0
+                    : firstKeyPrefixes.length;
+            return (long) partition << 32 | partition;
+        }
+
+        long prefix = Storage.keyPrefix(key, commonPrefix.byteSize());
+        int left = 0;
+        int right = firstKeyPrefixes.length - 1;
+        while (left <= right) {
+            int mid = (left + right) >>> 1;
+            if (Long.compareUnsigned(firstKeyPrefixes[mid], prefix) < 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        // previous partition starts with a lesser key, but its last key may still be equal to the given one,
+        // partitions starting with the same prefix may contain it too
+        int end = left;
+        while (end < firstKeyPrefixes.length && firstKeyPrefixes[end] == prefix) {
+            end++;
+        }
+        return (long) Math.max(left - 1, 0) << 32 | end;
+    }
+
+    static int firstPartition(long partitions) {
+        return (int) (partitions >>> 32);
+    }
+
+    static int endPartition(long partitions) {
+        return (int) partitions;
+    }
+}
@@ -18,13 +18,6 @@ public final class TimestampEntry implements Entry<MemorySegment> {
         this.entry = new BaseEntry<>(key, value);
         this.timestamp = timestamp;
     }
-    
-    public long getSizeBytes() {
-        final MemorySegment key = entry.key();
-        final MemorySegment value = entry.value();
-
-        return key.byteSize() + (value == null ? 0 : value.byteSize()) + Long.BYTES;
-    }
 
     public long getTimestamp() {
         return timestamp;
@@ -32,4 +32,42 @@ public final class Utils {
     public static int compare(MemorySegment key1, MemorySegment key2) {
         return COMPARATOR.compare(key1, key2);
     }
+
+    // zigzag LEB128: lengths below 64 and tombstone tag take a single byte
+    public static long writeVarLong(MemorySegment memorySegment, long offset, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        long writeOffset = offset;
+        while ((zigzag & ~0x7FL) != 0) {
+            MemoryAccess.setByteAtOffset(memorySegment, writeOffset++, (byte) (zigzag & 0x7F | 0x80));
+            zigzag >>>= 7;
+        }
+        MemoryAccess.setByteAtOffset(memorySegment, writeOffset++, (byte) zigzag);
+
+        return writeOffset - offset;
+    }
+
+    public static long readVarLong(MemorySegment memorySegment, long offset) {
+        long zigzag = 0;
+        long readOffset = offset;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = MemoryAccess.getByteAtOffset(memorySegment, readOffset++);
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public static int sizeOfVarLong(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        int size = 1;
+        while ((zigzag & ~0x7FL) != 0) {
+            zigzag >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
 }
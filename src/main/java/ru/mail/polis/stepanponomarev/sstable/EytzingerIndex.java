@@ -0,0 +1,122 @@
+package ru.mail.polis.stepanponomarev.sstable;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.stepanponomarev.Utils;
+
+import java.nio.ByteOrder;
+import java.util.function.IntFunction;
+
+// first keys of every BLOCK_SIZE entries of sstable (fences) in heap arrays in BFS (Eytzinger) order:
+// node k has children 2k and 2k + 1, so the first levels of every search stay in cache instead of jumping
+// across mapped index and data, the search ends with binary search over keys of a single block.
+// Only fences are read on open, it takes 12 bytes of heap per block.
+// Node keeps 8 bytes of its key which follow the prefix common for all keys, sign bits are flipped,
+// so that unsigned comparison of them agrees with Utils.compare. Full key is read only when they are equal.
+final class EytzingerIndex {
+    static final int BLOCK_SIZE = 64;
+    private static final long SIGN_BITS = 0x8080808080808080L;
+
+    private final int size;
+    private final int fences;
+    private final MemorySegment commonPrefix;
+    private final long[] prefixes;
+    // index of fence key among all keys
+    private final int[] ordinals;
+    private final IntFunction<MemorySegment> keys;
+
+    public EytzingerIndex(int size, IntFunction<MemorySegment> keys) {
+        this.size = size;
+        this.keys = keys;
+        this.commonPrefix = size == 0
+                ? MemorySegment.ofArray(new byte[0])
+                : commonPrefix(keys.apply(0), keys.apply(size - 1));
+        this.fences = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.prefixes = new long[fences + 1];
+        this.ordinals = new int[fences + 1];
+        fill(1, 0);
+    }
+
+    private static MemorySegment commonPrefix(MemorySegment first, MemorySegment last) {
+        final long mismatch = first.mismatch(last);
+        return MemorySegment.ofArray(first.asSlice(0, mismatch == -1 ? first.byteSize() : mismatch).toByteArray());
+    }
+
+    private int fill(int node, int fence) {
+        if (node > fences) {
+            return fence;
+        }
+
+        final int current = fill(node * 2, fence);
+        ordinals[node] = current * BLOCK_SIZE;
+        prefixes[node] = prefix(keys.apply(ordinals[node]));
+
+        return fill(node * 2 + 1, current + 1);
+    }
+
+    // index of the first key >= given one, size if there is none
+    public int lowerBound(MemorySegment key) {
+        final long mismatch = commonPrefix.mismatch(key);
+        if (mismatch != -1 && mismatch < commonPrefix.byteSize()) {
+            return Utils.compare(key, commonPrefix) < 0 ? 0 : size;
+        }
+
+        final long keyPrefix = prefix(key);
+        int node = 1;
+        while (node <= fences) {
+            node = node * 2 + (compare(node, key, keyPrefix) < 0 ? 1 : 0);
+        }
+
+        node >>>= Integer.numberOfTrailingZeros(~node) + 1;
+
+        // the first fence >= key ends the block, the previous fence starting it is < key
+        final int blockEnd = node == 0 ? size : ordinals[node];
+        if (blockEnd == 0) {
+            return 0;
+        }
+        final int blockStart = blockEnd == size ? (size - 1) / BLOCK_SIZE * BLOCK_SIZE : blockEnd - BLOCK_SIZE;
+
+        return lowerBound(key, blockStart + 1, blockEnd);
+    }
+
+    // keys of [from, to) are read from sstable, to if there is no key >= given one among them
+    private int lowerBound(MemorySegment key, int from, int to) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (Utils.compare(keys.apply(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private int compare(int node, MemorySegment key, long keyPrefix) {
+        final int compareResult = Long.compareUnsigned(prefixes[node], keyPrefix);
+        if (compareResult != 0) {
+            return compareResult;
+        }
+
+        return Utils.compare(keys.apply(ordinals[node]), key);
+    }
+
+    // missing bytes of short keys are not greater than any flipped byte, so order of prefixes agrees with order of keys
+    private long prefix(MemorySegment key) {
+        final long offset = commonPrefix.byteSize();
+        if (key.byteSize() >= offset + Long.BYTES) {
+            return MemoryAccess.getLongAtOffset(key, offset, ByteOrder.BIG_ENDIAN) ^ SIGN_BITS;
+        }
+
+        long prefix = 0;
+        for (long i = offset; i < offset + Long.BYTES; i++) {
+            final long b = i < key.byteSize() ? (MemoryAccess.getByteAtOffset(key, i) ^ 0x80) & 0xFFL : 0;
+            prefix = prefix << Byte.SIZE | b;
+        }
+
+        return prefix;
+    }
+}
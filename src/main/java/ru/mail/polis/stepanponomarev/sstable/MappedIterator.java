@@ -9,10 +9,12 @@ import java.util.NoSuchElementException;
 
 final class MappedIterator implements Iterator<TimestampEntry> {
     private final MemorySegment memorySegment;
+    private final boolean legacy;
     private long position;
 
-    public MappedIterator(MemorySegment segment) {
+    public MappedIterator(MemorySegment segment, boolean legacy) {
         memorySegment = segment;
+        this.legacy = legacy;
         position = 0;
     }
 
@@ -27,8 +29,8 @@ final class MappedIterator implements Iterator<TimestampEntry> {
             throw new NoSuchElementException();
         }
 
-        final long keySize = MemoryAccess.getLongAtOffset(memorySegment, position);
-        position += Long.BYTES;
+        final long keySize = SSTable.readLength(memorySegment, position, legacy);
+        position += SSTable.sizeOfLength(keySize, legacy);
 
         final MemorySegment key = memorySegment.asSlice(position, keySize);
         position += keySize;
@@ -36,8 +38,8 @@ final class MappedIterator implements Iterator<TimestampEntry> {
         final long timestamp = MemoryAccess.getLongAtOffset(memorySegment, position);
         position += Long.BYTES;
 
-        final long valueSize = MemoryAccess.getLongAtOffset(memorySegment, position);
-        position += Long.BYTES;
+        final long valueSize = SSTable.readLength(memorySegment, position, legacy);
+        position += SSTable.sizeOfLength(valueSize, legacy);
 
         if (valueSize == SSTable.TOMBSTONE_TAG) {
             return new TimestampEntry(key, null, timestamp);
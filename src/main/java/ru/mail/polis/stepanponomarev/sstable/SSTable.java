@@ -16,15 +16,31 @@ import java.util.Iterator;
 
 public final class SSTable implements Closeable {
     public static final long TOMBSTONE_TAG = -1;
+    // the first long of index, files written before it have no header
+    // and their index starts with offset 0 of the first entry instead
+    private static final long VERSION = 1;
+    // lengths are 8-byte longs instead of varints
+    private static final long LEGACY_VERSION = 0;
     private static final String SSTABLE_FILE_NAME = "sstable.data";
     private static final String INDEX_FILE_NAME = "sstable.index";
 
     private final MemorySegment indexMemorySegment;
     private final MemorySegment tableMemorySegment;
+    private final EytzingerIndex index;
+    private final boolean legacy;
 
     private SSTable(MemorySegment indexMemorySegment, MemorySegment tableMemorySegment) {
-        this.indexMemorySegment = indexMemorySegment;
+        final long version = indexMemorySegment.byteSize() == 0
+                ? LEGACY_VERSION
+                : MemoryAccess.getLongAtOffset(indexMemorySegment, 0);
+        if (version != VERSION && version != LEGACY_VERSION) {
+            throw new IllegalArgumentException("Unknown sstable version: " + version);
+        }
+
+        this.legacy = version == LEGACY_VERSION;
+        this.indexMemorySegment = legacy ? indexMemorySegment : indexMemorySegment.asSlice(Long.BYTES);
         this.tableMemorySegment = tableMemorySegment;
+        this.index = new EytzingerIndex((int) (this.indexMemorySegment.byteSize() / Long.BYTES), this::getKey);
     }
 
     public static SSTable createInstance(
@@ -36,7 +52,7 @@ public final class SSTable implements Closeable {
         final Path sstableFile = path.resolve(SSTABLE_FILE_NAME);
         Files.createFile(sstableFile);
 
-        final long sstableSizeBytes = (long) Long.BYTES * 2 * count + sizeBytes;
+        final long sstableSizeBytes = sizeBytes;
         final MemorySegment mappedSsTable = MemorySegment.mapFile(
                 sstableFile,
                 0,
@@ -48,7 +64,7 @@ public final class SSTable implements Closeable {
         final Path indexFile = path.resolve(INDEX_FILE_NAME);
         Files.createFile(indexFile);
 
-        final long indexSizeBytes = (long) Long.BYTES * count;
+        final long indexSizeBytes = (long) Long.BYTES * (count + 1);
         final MemorySegment mappedIndex = MemorySegment.mapFile(
                 indexFile,
                 0,
@@ -89,7 +105,8 @@ public final class SSTable implements Closeable {
     }
 
     private static void flush(Iterator<TimestampEntry> data, MemorySegment sstable, MemorySegment index) {
-        long indexOffset = 0;
+        MemoryAccess.setLongAtOffset(index, 0, VERSION);
+        long indexOffset = Long.BYTES;
         long sstableOffset = 0;
         while (data.hasNext()) {
             MemoryAccess.setLongAtOffset(index, indexOffset, sstableOffset);
@@ -113,54 +130,55 @@ public final class SSTable implements Closeable {
         }
 
         if (from == null && to == null) {
-            return new MappedIterator(tableMemorySegment);
+            return new MappedIterator(tableMemorySegment, legacy);
         }
 
         final int max = (int) (indexMemorySegment.byteSize() / Long.BYTES) - 1;
-        final int fromIndex = from == null ? 0 : Math.abs(findIndexOfKey(from));
+        final int fromIndex = from == null ? 0 : index.lowerBound(from);
 
         if (fromIndex > max) {
             return Collections.emptyIterator();
         }
 
-        final int toIndex = to == null ? max + 1 : Math.abs(findIndexOfKey(to));
+        final int toIndex = to == null ? max + 1 : index.lowerBound(to);
         final long fromPosition = MemoryAccess.getLongAtIndex(indexMemorySegment, fromIndex);
         final long toPosition = toIndex > max ? size : MemoryAccess.getLongAtIndex(indexMemorySegment, toIndex);
 
-        return new MappedIterator(tableMemorySegment.asSlice(fromPosition, toPosition - fromPosition));
+        return new MappedIterator(tableMemorySegment.asSlice(fromPosition, toPosition - fromPosition), legacy);
     }
 
-    private int findIndexOfKey(MemorySegment key) {
-        int low = 0;
-        int high = (int) (indexMemorySegment.byteSize() / Long.BYTES) - 1;
-
-        while (low <= high) {
-            int mid = (low + high) >>> 1;
-
-            final long keyPosition = MemoryAccess.getLongAtIndex(indexMemorySegment, mid);
-            final long keySize = MemoryAccess.getLongAtOffset(tableMemorySegment, keyPosition);
-            final MemorySegment current = tableMemorySegment.asSlice(keyPosition + Long.BYTES, keySize);
-
-            final int compareResult = Utils.compare(current, key);
-            if (compareResult < 0) {
-                low = mid + 1;
-            } else if (compareResult > 0) {
-                high = mid - 1;
-            } else {
-                return mid;
-            }
-        }
+    private MemorySegment getKey(int index) {
+        final long keyPosition = MemoryAccess.getLongAtIndex(indexMemorySegment, index);
+        final long keySize = readLength(tableMemorySegment, keyPosition, legacy);
+        final long keyOffset = keyPosition + sizeOfLength(keySize, legacy);
+
+        return tableMemorySegment.asSlice(keyOffset, keySize);
+    }
+
+    static long readLength(MemorySegment memorySegment, long offset, boolean legacy) {
+        return legacy ? MemoryAccess.getLongAtOffset(memorySegment, offset) : Utils.readVarLong(memorySegment, offset);
+    }
 
-        return -low;
+    static long sizeOfLength(long length, boolean legacy) {
+        return legacy ? Long.BYTES : Utils.sizeOfVarLong(length);
     }
-    
+
+    // exact number of bytes the entry takes in sstable
+    public static long getSizeBytes(TimestampEntry entry) {
+        final long keySize = entry.key().byteSize();
+        final long valueSize = entry.value() == null ? TOMBSTONE_TAG : entry.value().byteSize();
+
+        return Utils.sizeOfVarLong(keySize) + keySize
+                + Long.BYTES
+                + Utils.sizeOfVarLong(valueSize) + Math.max(valueSize, 0);
+    }
+
     private static long flush(TimestampEntry entry, MemorySegment memorySegment, long offset) {
         final MemorySegment key = entry.key();
         final long keySize = key.byteSize();
 
         long writeOffset = offset;
-        MemoryAccess.setLongAtOffset(memorySegment, writeOffset, keySize);
-        writeOffset += Long.BYTES;
+        writeOffset += Utils.writeVarLong(memorySegment, writeOffset, keySize);
 
         memorySegment.asSlice(writeOffset, keySize).copyFrom(key);
         writeOffset += keySize;
@@ -170,13 +188,12 @@ public final class SSTable implements Closeable {
 
         final MemorySegment value = entry.value();
         if (value == null) {
-            MemoryAccess.setLongAtOffset(memorySegment, writeOffset, TOMBSTONE_TAG);
-            return writeOffset + Long.BYTES - offset;
+            writeOffset += Utils.writeVarLong(memorySegment, writeOffset, TOMBSTONE_TAG);
+            return writeOffset - offset;
         }
 
         final long valueSize = value.byteSize();
-        MemoryAccess.setLongAtOffset(memorySegment, writeOffset, valueSize);
-        writeOffset += Long.BYTES;
+        writeOffset += Utils.writeVarLong(memorySegment, writeOffset, valueSize);
 
         memorySegment.asSlice(writeOffset, valueSize).copyFrom(value);
         writeOffset += valueSize;
@@ -45,7 +45,7 @@ public final class Storage implements Closeable {
 
         final long sizeBytes = memTable.values()
                 .stream()
-                .mapToLong(TimestampEntry::getSizeBytes)
+                .mapToLong(SSTable::getSizeBytes)
                 .sum();
 
         final Path sstableDir = path.resolve(SSTABLE_DIR_NAME + getHash(timestamp));
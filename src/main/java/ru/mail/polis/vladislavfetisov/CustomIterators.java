@@ -2,6 +2,7 @@ package ru.mail.polis.vladislavfetisov;
 
 import jdk.incubator.foreign.MemorySegment;
 import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.util.Collections;
 import java.util.Iterator;
@@ -66,7 +67,7 @@ public final class CustomIterators {
                 Entry<MemorySegment> e1 = it1.peek();
                 Entry<MemorySegment> e2 = it2.peek();
 
-                int compare = Utils.compareMemorySegments(e1.key(), e2.key());
+                int compare = MemorySegmentComparator.INSTANCE.compare(e1.key(), e2.key());
                 if (compare < 0) {
                     it1.next();
                     return e1;
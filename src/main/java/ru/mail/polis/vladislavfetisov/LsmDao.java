@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 import ru.mail.polis.Config;
 import ru.mail.polis.Dao;
 import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -89,12 +90,9 @@ public class LsmDao implements Dao<MemorySegment, Entry<MemorySegment>> {
     public void compact() throws IOException {
         List<SSTable> fixed = this.tables;
         NavigableMap<MemorySegment, Entry<MemorySegment>> readOnlyStorage = this.storage;
-        Iterator<Entry<MemorySegment>> forSize = get(null, null, readOnlyStorage, fixed);
-        Iterator<Entry<MemorySegment>> forWrite = get(null, null, readOnlyStorage, fixed);
+        Iterator<Entry<MemorySegment>> merged = get(null, null, readOnlyStorage, fixed);
 
-        SSTable.Sizes sizes = Utils.getSizes(forSize);
-
-        this.tables = List.of(writeSSTable(forWrite, sizes.tableSize(), sizes.indexSize())); //immutable
+        this.tables = List.of(writeSSTable(merged)); //immutable
         this.storage = getNewStorage();
         Utils.deleteTables(fixed);
     }
@@ -111,7 +109,7 @@ public class LsmDao implements Dao<MemorySegment, Entry<MemorySegment>> {
             return null;
         }
         Entry<MemorySegment> desired = singleIterator.next();
-        if (Utils.compareMemorySegments(desired.key(), key) != 0) {
+        if (MemorySegmentComparator.INSTANCE.compare(desired.key(), key) != 0) {
             return null;
         }
         return desired;
@@ -123,8 +121,7 @@ public class LsmDao implements Dao<MemorySegment, Entry<MemorySegment>> {
             return;
         }
         NavigableMap<MemorySegment, Entry<MemorySegment>> readOnlyStorage = this.storage;
-        SSTable.Sizes sizes = Utils.getSizes(readOnlyStorage.values().iterator());
-        SSTable table = writeSSTable(readOnlyStorage.values().iterator(), sizes.tableSize(), sizes.indexSize());
+        SSTable table = writeSSTable(readOnlyStorage.values().iterator());
 
         tablesAtomicAdd(table); //need for concurrent get
         this.storage = getNewStorage();
@@ -145,12 +142,9 @@ public class LsmDao implements Dao<MemorySegment, Entry<MemorySegment>> {
         }
     }
 
-    private SSTable writeSSTable(Iterator<Entry<MemorySegment>> iterator,
-                                 long tableSize,
-                                 long indexSize) throws IOException {
-
+    private SSTable writeSSTable(Iterator<Entry<MemorySegment>> iterator) throws IOException {
         Path tableName = nextTableName();
-        return SSTable.writeTable(tableName, iterator, tableSize, indexSize);
+        return SSTable.writeTable(tableName, iterator);
     }
 
     private Path nextTableName() {
@@ -158,6 +152,6 @@ public class LsmDao implements Dao<MemorySegment, Entry<MemorySegment>> {
     }
 
     private static ConcurrentSkipListMap<MemorySegment, Entry<MemorySegment>> getNewStorage() {
-        return new ConcurrentSkipListMap<>(Utils::compareMemorySegments);
+        return new ConcurrentSkipListMap<>(MemorySegmentComparator.INSTANCE);
     }
 }
@@ -4,6 +4,7 @@ import jdk.incubator.foreign.MemoryAccess;
 import jdk.incubator.foreign.MemorySegment;
 import jdk.incubator.foreign.ResourceScope;
 import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -12,6 +13,7 @@ import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -24,8 +26,17 @@ public final class SSTable implements Closeable {
     public static final int NULL_VALUE = -1;
     public static final String TEMP = "_tmp";
     public static final String INDEX = "_i";
+    // the first long of index, tables written before it have no header
+    // and their index starts with offset 0 of the first entry instead
+    public static final long VERSION = 1;
+    // lengths are 8-byte longs instead of varints,
+    // and keys are sorted by signed bytes, as they were compared before MemorySegmentComparator
+    public static final long LEGACY_VERSION = 0;
+    // data of LEGACY_VERSION with index sorted by unsigned bytes, see migrateIndex
+    public static final long MIGRATED_LEGACY_VERSION = 2;
     private final MemorySegment mapFile;
     private final MemorySegment mapIndex;
+    private final long version;
     private final Path tableName;
     private final Path indexName;
     private final ResourceScope sharedScope;
@@ -42,8 +53,14 @@ public final class SSTable implements Closeable {
         sharedScope = ResourceScope.newSharedScope();
         mapFile = Utils.map(tableName, tableSize, FileChannel.MapMode.READ_ONLY, sharedScope);
         this.tableName = tableName;
-        mapIndex = Utils.map(indexName, indexSize, FileChannel.MapMode.READ_ONLY, sharedScope);
+        MemorySegment mapIndexWithHeader = Utils.map(indexName, indexSize, FileChannel.MapMode.READ_ONLY, sharedScope);
         this.indexName = indexName;
+        version = indexSize == 0 ? LEGACY_VERSION : MemoryAccess.getLongAtOffset(mapIndexWithHeader, 0);
+        if (version != VERSION && version != LEGACY_VERSION && version != MIGRATED_LEGACY_VERSION) {
+            sharedScope.close();
+            throw new IOException("Unknown version " + version + " of " + tableName);
+        }
+        mapIndex = version == LEGACY_VERSION ? mapIndexWithHeader : mapIndexWithHeader.asSlice(Long.BYTES);
     }
 
     public static List<SSTable> getAllTables(Path dir) {
@@ -66,16 +83,50 @@ public final class SSTable implements Closeable {
     private static SSTable mapToTable(Path path) {
         try {
             Path index = Utils.withSuffix(path, INDEX);
+            SSTable table = new SSTable(path, index, Files.size(path), Files.size(index));
+            if (table.version != LEGACY_VERSION) {
+                return table;
+            }
+            table.migrateIndex();
             return new SSTable(path, index, Files.size(path), Files.size(index));
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * Sorts index of legacy table by unsigned bytes of keys, the same order as the rest of tables and memory,
+     * and replaces it, so that merge of them is correct. Data file is not changed,
+     * only one file is renamed, so the table is either migrated or not after a crash. Closes the table.
+     */
+    private void migrateIndex() throws IOException {
+        logger.info("Migrating index of legacy table {}", tableName);
+        Path indexTemp = Utils.withSuffix(indexName, TEMP);
+        Files.deleteIfExists(indexTemp);
+        newFile(indexTemp);
+        try (SegmentWriter indexWriter = new SegmentWriter(indexTemp)) {
+            // boxed, but it is done once per legacy table
+            Long[] offsets = new Long[Math.toIntExact(mapIndex.byteSize() / Long.BYTES)];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = MemoryAccess.getLongAtIndex(mapIndex, i);
+            }
+            Arrays.sort(offsets, (o1, o2) -> MemorySegmentComparator.INSTANCE.compare(
+                    Utils.getByOffset(mapFile, o1, version).key(),
+                    Utils.getByOffset(mapFile, o2, version).key()
+            ));
+
+            indexWriter.writeLong(MIGRATED_LEGACY_VERSION);
+            for (long offset : offsets) {
+                indexWriter.writeLong(offset);
+            }
+        } finally {
+            close();
+        }
+        Utils.rename(indexTemp, indexName);
+    }
+
     public static SSTable writeTable(Path table,
-                                     Iterator<Entry<MemorySegment>> values,
-                                     long tableSize,
-                                     long indexSize) throws IOException {
+                                     Iterator<Entry<MemorySegment>> values) throws IOException {
         Path tableTemp = Utils.withSuffix(table, TEMP);
 
         Path index = table.resolveSibling(table + INDEX);
@@ -84,31 +135,25 @@ public final class SSTable implements Closeable {
         newFile(tableTemp);
         newFile(indexTemp);
 
-        try (ResourceScope writingScope = ResourceScope.newSharedScope()) {
-            MemorySegment fileMap = Utils.map(tableTemp, tableSize, FileChannel.MapMode.READ_WRITE, writingScope);
-            MemorySegment indexMap = Utils.map(indexTemp, indexSize, FileChannel.MapMode.READ_WRITE, writingScope);
-
-            long indexOffset = 0;
-            long fileOffset = 0;
-
+        try (SegmentWriter tableWriter = new SegmentWriter(tableTemp);
+             SegmentWriter indexWriter = new SegmentWriter(indexTemp)) {
+            indexWriter.writeLong(VERSION);
             while (values.hasNext()) {
                 Entry<MemorySegment> entry = values.next();
-                MemoryAccess.setLongAtOffset(indexMap, indexOffset, fileOffset);
-                indexOffset += Long.BYTES;
+                indexWriter.writeLong(tableWriter.position());
 
-                fileOffset += Utils.writeSegment(entry.key(), fileMap, fileOffset);
+                tableWriter.writeSegment(entry.key());
 
                 if (entry.value() == null) {
-                    MemoryAccess.setLongAtOffset(fileMap, fileOffset, NULL_VALUE);
-                    fileOffset += Long.BYTES;
+                    tableWriter.writeVarLong(NULL_VALUE);
                     continue;
                 }
-                fileOffset += Utils.writeSegment(entry.value(), fileMap, fileOffset);
+                tableWriter.writeSegment(entry.value());
             }
-            Utils.rename(indexTemp, index);
-            Utils.rename(tableTemp, table);
         }
-        return new SSTable(table, index, tableSize, indexSize);
+        Utils.rename(indexTemp, index);
+        Utils.rename(tableTemp, table);
+        return new SSTable(table, index, Files.size(table), Files.size(index));
     }
 
     private static void newFile(Path tableTemp) throws IOException {
@@ -122,7 +167,7 @@ public final class SSTable implements Closeable {
         long li = 0;
         long ri = mapIndex.byteSize() / Long.BYTES;
         if (from != null) {
-            li = Utils.binarySearch(from, mapFile, mapIndex);
+            li = Utils.binarySearch(from, mapFile, mapIndex, version);
             if (li == -1) {
                 li = 0;
             }
@@ -131,7 +176,7 @@ public final class SSTable implements Closeable {
             }
         }
         if (to != null) {
-            ri = Utils.binarySearch(to, mapFile, mapIndex);
+            ri = Utils.binarySearch(to, mapFile, mapIndex, version);
             if (ri == -1) {
                 return Collections.emptyIterator();
             }
@@ -151,7 +196,7 @@ public final class SSTable implements Closeable {
                 if (!hasNext()) {
                     throw new NoSuchElementException();
                 }
-                Entry<MemorySegment> res = Utils.getByIndex(mapFile, mapIndex, pos);
+                Entry<MemorySegment> res = Utils.getByIndex(mapFile, mapIndex, pos, version);
                 pos++;
                 return res;
             }
@@ -162,12 +207,4 @@ public final class SSTable implements Closeable {
     public void close() throws IOException {
         sharedScope.close();
     }
-
-    /**
-     * record Sizes contains tableSize-size of SSTable,
-     * indexSize-size of indexTable.
-     */
-    public record Sizes(long tableSize, long indexSize) {
-        //empty
-    }
 }
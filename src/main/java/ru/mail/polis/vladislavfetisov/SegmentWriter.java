@@ -0,0 +1,90 @@
+package ru.mail.polis.vladislavfetisov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Buffered sequential writer of length-prefixed segments,
+ * so a table can be written without knowing its size in advance.
+ */
+public final class SegmentWriter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final MemorySegment bufferSegment = MemorySegment.ofByteBuffer(buffer);
+    private long position;
+
+    public SegmentWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public void writeLong(long value) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            flushBuffer();
+        }
+        MemoryAccess.setLongAtOffset(bufferSegment, buffer.position(), value);
+        buffer.position(buffer.position() + Long.BYTES);
+        position += Long.BYTES;
+    }
+
+    public void writeVarLong(long value) throws IOException {
+        if (buffer.remaining() < Utils.MAX_VAR_LONG_SIZE) {
+            flushBuffer();
+        }
+        int written = (int) Utils.writeVarLong(value, bufferSegment, buffer.position());
+        buffer.position(buffer.position() + written);
+        position += written;
+    }
+
+    public void writeSegment(MemorySegment segment) throws IOException {
+        long length = segment.byteSize();
+        if (Utils.MAX_VAR_LONG_SIZE + length <= buffer.remaining()) {
+            int written = (int) Utils.writeSegment(segment, bufferSegment, buffer.position());
+            buffer.position(buffer.position() + written);
+            position += written;
+            return;
+        }
+        writeVarLong(length);
+        long offset = 0;
+        while (offset < length) {
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            int chunk = (int) Math.min(buffer.remaining(), length - offset);
+            bufferSegment.asSlice(buffer.position(), chunk).copyFrom(segment.asSlice(offset, chunk));
+            buffer.position(buffer.position() + chunk);
+            offset += chunk;
+        }
+        position += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -5,54 +5,35 @@ import jdk.incubator.foreign.MemorySegment;
 import jdk.incubator.foreign.ResourceScope;
 import ru.mail.polis.BaseEntry;
 import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
 
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.Iterator;
 import java.util.List;
 
 import static ru.mail.polis.vladislavfetisov.LsmDao.logger;
 
 public final class Utils {
+    public static final int MAX_VAR_LONG_SIZE = 10;
 
     private Utils() {
 
     }
 
-    private static long sizeOfEntry(Entry<MemorySegment> entry) {
-        long valueSize = (entry.value() == null) ? 0 : entry.value().byteSize();
-        return 2L * Long.BYTES + entry.key().byteSize() + valueSize;
-    }
-
-    public static int compareMemorySegments(MemorySegment o1, MemorySegment o2) {
-        long mismatch = o1.mismatch(o2);
-        if (mismatch == -1) {
-            return 0;
-        }
-        if (mismatch == o1.byteSize()) {
-            return -1;
-        }
-        if (mismatch == o2.byteSize()) {
-            return 1;
-        }
-        byte b1 = MemoryAccess.getByteAtOffset(o1, mismatch);
-        byte b2 = MemoryAccess.getByteAtOffset(o2, mismatch);
-        return Byte.compare(b1, b2);
-    }
-
     public static long binarySearch(MemorySegment key,
                                     MemorySegment mapFile,
-                                    MemorySegment mapIndex) {
+                                    MemorySegment mapIndex,
+                                    long version) {
         long l = 0;
         long rightBound = mapIndex.byteSize() / Long.BYTES;
         long r = rightBound - 1;
         while (l <= r) {
             long middle = (l + r) >>> 1;
-            Entry<MemorySegment> middleEntry = getByIndex(mapFile, mapIndex, middle);
-            int res = compareMemorySegments(middleEntry.key(), key);
+            Entry<MemorySegment> middleEntry = getByIndex(mapFile, mapIndex, middle, version);
+            int res = MemorySegmentComparator.INSTANCE.compare(middleEntry.key(), key);
             if (res == 0) {
                 return middle;
             } else if (res < 0) {
@@ -67,35 +48,91 @@ public final class Utils {
         return l;
     }
 
-    public static Entry<MemorySegment> getByIndex(MemorySegment mapFile, MemorySegment mapIndex, long index) {
-        long offset = getLength(mapIndex, index * Long.BYTES);
+    public static Entry<MemorySegment> getByIndex(MemorySegment mapFile,
+                                                  MemorySegment mapIndex,
+                                                  long index,
+                                                  long version) {
+        return getByOffset(mapFile, MemoryAccess.getLongAtOffset(mapIndex, index * Long.BYTES), version);
+    }
 
-        long keyLength = getLength(mapFile, offset);
-        offset += Long.BYTES;
+    public static Entry<MemorySegment> getByOffset(MemorySegment mapFile, long entryOffset, long version) {
+        long offset = entryOffset;
+        long keyLength = readLength(mapFile, offset, version);
+        offset += lengthSize(keyLength, version);
         MemorySegment key = mapFile.asSlice(offset, keyLength);
 
         offset += keyLength;
-        long valueLength = getLength(mapFile, offset);
+        long valueLength = readLength(mapFile, offset, version);
         MemorySegment value;
         if (valueLength == SSTable.NULL_VALUE) {
             value = null;
         } else {
-            value = mapFile.asSlice(offset + Long.BYTES, valueLength);
+            value = mapFile.asSlice(offset + lengthSize(valueLength, version), valueLength);
         }
         return new BaseEntry<>(key, value);
     }
 
-    private static long getLength(MemorySegment mapFile, long offset) {
-        return MemoryAccess.getLongAtOffset(mapFile, offset);
+    // both legacy versions have 8-byte lengths
+    private static long readLength(MemorySegment mapFile, long offset, long version) {
+        if (version != SSTable.VERSION) {
+            return MemoryAccess.getLongAtOffset(mapFile, offset);
+        }
+        return readVarLong(mapFile, offset);
+    }
+
+    private static long lengthSize(long length, long version) {
+        if (version != SSTable.VERSION) {
+            return Long.BYTES;
+        }
+        return varLongSize(length);
     }
 
     public static long writeSegment(MemorySegment segment, MemorySegment fileMap, long fileOffset) {
         long length = segment.byteSize();
-        MemoryAccess.setLongAtOffset(fileMap, fileOffset, length);
+        long lengthSize = writeVarLong(length, fileMap, fileOffset);
 
-        fileMap.asSlice(fileOffset + Long.BYTES).copyFrom(segment);
+        fileMap.asSlice(fileOffset + lengthSize, length).copyFrom(segment);
 
-        return Long.BYTES + length;
+        return lengthSize + length;
+    }
+
+    /**
+     * Writes value as zigzag LEB128, so small lengths and {@link SSTable#NULL_VALUE} take a single byte.
+     *
+     * @return number of written bytes
+     */
+    public static long writeVarLong(long value, MemorySegment fileMap, long fileOffset) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        long offset = fileOffset;
+        while ((zigzag & ~0x7FL) != 0) {
+            MemoryAccess.setByteAtOffset(fileMap, offset++, (byte) (zigzag & 0x7F | 0x80));
+            zigzag >>>= 7;
+        }
+        MemoryAccess.setByteAtOffset(fileMap, offset++, (byte) zigzag);
+        return offset - fileOffset;
+    }
+
+    public static long readVarLong(MemorySegment mapFile, long offset) {
+        long zigzag = 0;
+        long position = offset;
+        for (int shift = 0; ; shift += 7) {
+            byte b = MemoryAccess.getByteAtOffset(mapFile, position++);
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public static int varLongSize(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        int size = 1;
+        while ((zigzag & ~0x7FL) != 0) {
+            zigzag >>>= 7;
+            size++;
+        }
+        return size;
     }
 
     public static MemorySegment map(Path table,
@@ -124,16 +161,6 @@ public final class Utils {
         }
     }
 
-    public static SSTable.Sizes getSizes(Iterator<Entry<MemorySegment>> values) {
-        long tableSize = 0;
-        long count = 0;
-        while (values.hasNext()) {
-            tableSize += sizeOfEntry(values.next());
-            count++;
-        }
-        return new SSTable.Sizes(tableSize, count * Long.BYTES);
-    }
-
     public static void checkMemory() {
         long usedMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
         logger.info("memory use: {}", usedMemory / 1024L);
@@ -0,0 +1,165 @@
+package ru.mail.polis;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares random pairs of keys with MemorySegmentComparator and with mismatch-then-byte comparison
+ * which implementations used before it. Every measurement runs in its own JVM, so that the comparison call site
+ * is compiled for one comparator only, best of FORKS is reported.
+ * Before measurements results are checked against Arrays.compareUnsigned on random pairs.
+ * Not a test, run it by hand: {@code MemorySegmentComparatorBenchmark}
+ */
+public final class MemorySegmentComparatorBenchmark {
+
+    private static final String[] KEY_FORMATS = {
+            "k%d", "key%010d", "user:profile:%016d", "long-shared-prefix-of-fourty-bytes-here-%012d"
+    };
+    private static final String[] LAYOUTS = {"heap", "native", "mixed"};
+    private static final int FORKS = 5;
+    private static final int KEYS = 1024;
+    private static final int PAIRS = 1 << 16;
+    private static final int ROUNDS = 15;
+    private static final int CHECKS = 2_000_000;
+
+    private MemorySegmentComparatorBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 3) {
+            System.out.println(measure(comparator(args[0]), KEY_FORMATS[Integer.parseInt(args[1])], args[2]));
+            return;
+        }
+
+        check();
+        System.out.printf("%-48s %-7s %10s %10s%n", "keys", "layout", "mismatch", "current");
+        for (int format = 0; format < KEY_FORMATS.length; format++) {
+            for (String layout : LAYOUTS) {
+                System.out.printf("%-48s %-7s %10.1f %10.1f%n", KEY_FORMATS[format], layout,
+                        fork("mismatch", format, layout), fork("current", format, layout));
+            }
+        }
+    }
+
+    private static Comparator<MemorySegment> comparator(String name) {
+        return name.equals("mismatch") ? MemorySegmentComparatorBenchmark::mismatch : MemorySegmentComparator.INSTANCE;
+    }
+
+    private static int mismatch(MemorySegment m1, MemorySegment m2) {
+        long mismatch = m1.mismatch(m2);
+        if (mismatch == -1) {
+            return 0;
+        }
+        if (mismatch == m1.byteSize()) {
+            return -1;
+        }
+        if (mismatch == m2.byteSize()) {
+            return 1;
+        }
+        return Byte.compareUnsigned(
+                MemoryAccess.getByteAtOffset(m1, mismatch),
+                MemoryAccess.getByteAtOffset(m2, mismatch)
+        );
+    }
+
+    // half of the pairs are a key and its truncated copy, some with one bit flipped
+    private static void check() {
+        Random random = new Random(3);
+        for (int i = 0; i < CHECKS; i++) {
+            byte[] first = new byte[random.nextInt(40)];
+            random.nextBytes(first);
+            byte[] second;
+            if (random.nextBoolean()) {
+                second = Arrays.copyOf(first, random.nextInt(45));
+                if (second.length > 0 && random.nextBoolean()) {
+                    second[random.nextInt(second.length)] ^= (byte) (1 << random.nextInt(8));
+                }
+            } else {
+                second = new byte[random.nextInt(40)];
+                random.nextBytes(second);
+            }
+
+            int expected = Integer.signum(Arrays.compareUnsigned(first, second));
+            MemorySegment heap = MemorySegment.ofArray(first);
+            MemorySegment unaligned = MemorySegment.allocateNative(first.length + 3, ResourceScope.newImplicitScope())
+                    .asSlice(3);
+            unaligned.copyFrom(heap);
+            for (MemorySegment segment : List.of(heap, unaligned)) {
+                int actual = MemorySegmentComparator.INSTANCE.compare(segment, MemorySegment.ofArray(second));
+                if (Integer.signum(actual) != expected) {
+                    throw new IllegalStateException(
+                            "Wrong order of " + Arrays.toString(first) + " and " + Arrays.toString(second)
+                    );
+                }
+            }
+        }
+    }
+
+    private static double fork(String comparator, int format, String layout) throws IOException, InterruptedException {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < FORKS; i++) {
+            Process process = new ProcessBuilder(
+                    java, "--add-modules", "jdk.incubator.foreign", "-cp", System.getProperty("java.class.path"),
+                    MemorySegmentComparatorBenchmark.class.getName(), comparator, Integer.toString(format), layout
+            ).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+
+            try (BufferedReader output = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line = output.readLine();
+                if (process.waitFor() != 0 || line == null) {
+                    throw new IllegalStateException("Fork failed: " + comparator + " " + format + " " + layout);
+                }
+                best = Math.min(best, Double.parseDouble(line));
+            }
+        }
+        return best;
+    }
+
+    // nanoseconds per comparison, best of ROUNDS
+    private static double measure(Comparator<MemorySegment> comparator, String format, String layout) {
+        Random random = new Random(3);
+        MemorySegment[] keys = new MemorySegment[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            byte[] key = String.format(format, random.nextInt(1_000_000)).getBytes(StandardCharsets.UTF_8);
+            MemorySegment offHeap = MemorySegment.allocateNative(key.length, ResourceScope.globalScope());
+            offHeap.copyFrom(MemorySegment.ofArray(key));
+            keys[i] = switch (layout) {
+                case "heap" -> MemorySegment.ofArray(key);
+                case "native" -> offHeap;
+                default -> i % 2 == 0 ? offHeap : MemorySegment.ofArray(key);
+            };
+        }
+        int[] pairs = new int[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            pairs[i] = random.nextInt(KEYS);
+        }
+
+        double best = Double.MAX_VALUE;
+        long checksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int repeat = 0; repeat < 100; repeat++) {
+                for (int i = 1; i < PAIRS; i++) {
+                    checksum += comparator.compare(keys[pairs[i]], keys[pairs[i - 1]]);
+                }
+            }
+            best = Math.min(best, (System.nanoTime() - start) / (100.0 * PAIRS));
+        }
+        // keeps comparisons from being eliminated
+        if (checksum == Long.MIN_VALUE) {
+            throw new IllegalStateException();
+        }
+        return best;
+    }
+}
@@ -0,0 +1,136 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+import static ru.mail.polis.artyomdrozdov.Segments.string;
+
+@Timeout(10)
+public class BackgroundFlushTest extends BaseTest {
+
+    private static final int COUNT = 10_000;
+    private static final long STALL_TIMEOUT_MILLIS = 5_000;
+    // flush can not create its temporary sstable file where a directory is
+    private static final Path BLOCKED_SSTABLE = Path.of("data0.dat.tmp");
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void rotateAndFlushInBackground() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(config(16 * 1024))) {
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(valueAt(i))));
+                if (i % 2500 == 0) {
+                    assertEntries(dao, i + 1);
+                }
+            }
+            assertEntries(dao, COUNT);
+            // memtables were rotated and saved without explicit flush
+            Assertions.assertTrue(sstableCount() > 1);
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config(16 * 1024))) {
+            assertEntries(dao, COUNT);
+        }
+    }
+
+    @Test
+    void failedFlushLeavesDaoReadOnly() throws IOException {
+        Files.createDirectory(basePath.resolve(BLOCKED_SSTABLE));
+        MemorySegmentDao dao = new MemorySegmentDao(config(1 << 20));
+        upsert(dao, 0, COUNT);
+
+        Assertions.assertThrows(IOException.class, dao::flush);
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, dao::flush);
+        Assertions.assertNotNull(e.getCause());
+        Assertions.assertThrows(IllegalStateException.class, () -> upsert(dao, COUNT, COUNT + 1));
+        Assertions.assertThrows(IllegalStateException.class, dao::compact);
+        // memtable which failed to flush is still readable
+        assertEntries(dao, COUNT);
+
+        Assertions.assertThrows(IllegalStateException.class, dao::close);
+        Assertions.assertFalse(backgroundThreadAlive());
+
+        // its log is left for the next start
+        Files.delete(basePath.resolve(BLOCKED_SSTABLE));
+        try (MemorySegmentDao reopened = new MemorySegmentDao(config(1 << 20))) {
+            assertEntries(reopened, COUNT);
+        }
+    }
+
+    @Test
+    void stalledWritersFailWithFlushError() throws IOException {
+        Files.createDirectory(basePath.resolve(BLOCKED_SSTABLE));
+        MemorySegmentDao dao = new MemorySegmentDao(config(16 * 1024));
+
+        long start = System.nanoTime();
+        IllegalStateException e = Assertions.assertThrows(
+                IllegalStateException.class,
+                () -> upsert(dao, 0, COUNT)
+        );
+        Assertions.assertTrue(e.getCause() instanceof IOException, String.valueOf(e.getCause()));
+        // writers do not wait for stall timeout once flush has failed
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(STALL_TIMEOUT_MILLIS));
+
+        Assertions.assertThrows(IllegalStateException.class, dao::close);
+        Assertions.assertFalse(backgroundThreadAlive());
+    }
+
+    private void upsert(MemorySegmentDao dao, int from, int to) {
+        for (int i = from; i < to; i++) {
+            dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(valueAt(i))));
+        }
+    }
+
+    private void assertEntries(MemorySegmentDao dao, int count) throws IOException {
+        Iterator<Entry<MemorySegment>> all = dao.all();
+        for (int i = 0; i < count; i++) {
+            Entry<MemorySegment> entry = all.next();
+            Assertions.assertEquals(keyAt(i), string(entry.key()));
+            Assertions.assertEquals(valueAt(i), string(entry.value()));
+        }
+        Assertions.assertFalse(all.hasNext());
+        Assertions.assertEquals(valueAt(count - 1), string(dao.get(segment(keyAt(count - 1))).value()));
+    }
+
+    private long sstableCount() throws IOException {
+        try (Stream<Path> files = Files.list(basePath)) {
+            return files.filter(file -> file.getFileName().toString().matches("data\\d+\\.dat")).count();
+        }
+    }
+
+    // terminated executor may need a moment to let its worker thread finish, a leaked one waits forever
+    private boolean backgroundThreadAlive() {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            boolean alive = Thread.getAllStackTraces().keySet().stream()
+                    .anyMatch(thread -> thread.getName().equals("MemorySegmentDao-background") && thread.isAlive());
+            if (!alive) {
+                return false;
+            }
+            sleep(10);
+        }
+        return true;
+    }
+
+    private Config config(long flushThresholdBytes) {
+        return new Config(basePath, flushThresholdBytes)
+                .withWriteStallTimeoutMillis(STALL_TIMEOUT_MILLIS)
+                .withChecksumVerification(Config.ChecksumVerification.OFF);
+    }
+}
@@ -0,0 +1,129 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+import static ru.mail.polis.artyomdrozdov.Segments.string;
+
+@Timeout(10)
+public class BlockSSTableTest extends BaseTest {
+
+    // small entries, so every block holds many restart intervals
+    private static final int COUNT = 2_000;
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void seekBetweenRestartPoints() throws IOException {
+        seekBetweenRestartPoints(Config.Compression.NONE);
+    }
+
+    @Test
+    void seekBetweenRestartPointsOfCompressedBlocks() throws IOException {
+        seekBetweenRestartPoints(Config.Compression.LZ4);
+    }
+
+    @Test
+    void keysSharingNoPrefix() throws IOException {
+        // the first byte differs in every pair of neighbours, so no key is stored as a suffix
+        Random random = new Random(42);
+        List<byte[]> keys = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            byte[] key = new byte[1 + random.nextInt(8)];
+            random.nextBytes(key);
+            key[0] = (byte) i;
+            keys.add(key);
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config(Config.Compression.NONE))) {
+            for (byte[] key : keys) {
+                dao.upsert(new BaseEntry<>(MemorySegment.ofArray(key), MemorySegment.ofArray(key)));
+            }
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config(Config.Compression.NONE))) {
+            Iterator<Entry<MemorySegment>> all = dao.all();
+            for (byte[] key : keys) {
+                Entry<MemorySegment> entry = all.next();
+                Assertions.assertArrayEquals(key, entry.key().toByteArray());
+                Assertions.assertArrayEquals(key, entry.value().toByteArray());
+
+                Entry<MemorySegment> found = dao.get(MemorySegment.ofArray(key));
+                Assertions.assertNotNull(found);
+                Assertions.assertArrayEquals(key, found.value().toByteArray());
+                // sorts right after the key, before the next one
+                byte[] missing = new byte[key.length + 1];
+                System.arraycopy(key, 0, missing, 0, key.length);
+                Assertions.assertNull(dao.get(MemorySegment.ofArray(missing)));
+            }
+            Assertions.assertFalse(all.hasNext());
+        }
+    }
+
+    // only even keys are stored, odd ones fall between entries, and most of them between restart points
+    private void seekBetweenRestartPoints(Config.Compression compression) throws IOException {
+        NavigableMap<String, String> expected = new TreeMap<>();
+        try (MemorySegmentDao dao = new MemorySegmentDao(config(compression))) {
+            for (int i = 0; i < COUNT; i += 2) {
+                String value = i % 14 == 0 ? null : valueAt(i);
+                dao.upsert(new BaseEntry<>(segment(keyAt(i)), value == null ? null : segment(value)));
+                if (value != null) {
+                    expected.put(keyAt(i), value);
+                }
+            }
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config(compression))) {
+            for (int i = 0; i <= COUNT; i++) {
+                Entry<MemorySegment> entry = dao.get(segment(keyAt(i)));
+                if (expected.containsKey(keyAt(i))) {
+                    Assertions.assertEquals(expected.get(keyAt(i)), string(entry.value()), keyAt(i));
+                } else {
+                    Assertions.assertNull(entry, keyAt(i));
+                }
+            }
+
+            for (int from = 0; from < COUNT; from += 7) {
+                for (int to : new int[] {from, from + 1, from + 2 * BlockSSTable.RESTART_INTERVAL + 1, COUNT + 1}) {
+                    assertRange(dao, expected.subMap(keyAt(from), keyAt(to)), keyAt(from), keyAt(to));
+                }
+            }
+            assertRange(dao, expected, keyAt(0), null);
+        }
+    }
+
+    private static void assertRange(MemorySegmentDao dao, Map<String, String> expected, String from, String to)
+            throws IOException {
+        Iterator<Entry<MemorySegment>> range = dao.get(segment(from), to == null ? null : segment(to));
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            Assertions.assertTrue(range.hasNext(), entry.getKey());
+            Entry<MemorySegment> actual = range.next();
+            Assertions.assertEquals(entry.getKey(), string(actual.key()));
+            Assertions.assertEquals(entry.getValue(), string(actual.value()));
+        }
+        Assertions.assertFalse(range.hasNext(), from + ".." + to);
+    }
+
+    private Config config(Config.Compression compression) {
+        return new Config(basePath, 1 << 20).withCompression(compression);
+    }
+}
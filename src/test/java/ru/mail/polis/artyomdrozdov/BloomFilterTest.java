@@ -0,0 +1,108 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+import static ru.mail.polis.artyomdrozdov.Segments.string;
+
+@Timeout(10)
+public class BloomFilterTest extends BaseTest {
+
+    // even keys up to KEYS are stored, odd ones are absent but inside fences, all of them fit in one block
+    private static final int KEYS = 200;
+    // inside payload of the only block, past its codec id, raw size and checksum
+    private static final long BLOCK_BYTE = 32;
+    private static final Path SSTABLE = Path.of("data0.dat");
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void negativeLookupsSkipSSTable() throws IOException {
+        write(Config.DEFAULT_BLOOM_BITS_PER_KEY);
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            SSTable sstable = open(scope);
+            // no false negatives
+            for (int i = 0; i <= KEYS; i += 2) {
+                Assertions.assertEquals(valueAt(i), string(get(sstable, keyAt(i)).value()));
+            }
+        }
+
+        // the only block is corrupted and verified on every read, so only false positives touch it,
+        // about 1% of absent keys at 10 bits per key
+        flipByte(BLOCK_BYTE);
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            Assertions.assertTrue(blockReads(open(scope)) <= KEYS / 2 / 20);
+        }
+    }
+
+    @Test
+    void zeroBitsPerKeyDisablesFilter() throws IOException {
+        write(0);
+        flipByte(BLOCK_BYTE);
+
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            Assertions.assertEquals(KEYS / 2, blockReads(open(scope)));
+        }
+    }
+
+    // absent keys which were looked up in the block
+    private int blockReads(SSTable sstable) {
+        int reads = 0;
+        for (int i = 1; i < KEYS; i += 2) {
+            try {
+                Assertions.assertNull(get(sstable, keyAt(i)));
+            } catch (IllegalStateException e) {
+                reads++;
+            }
+        }
+        return reads;
+    }
+
+    private void write(int bloomBitsPerKey) throws IOException {
+        List<Entry<MemorySegment>> entries = new ArrayList<>();
+        for (int i = 0; i <= KEYS; i += 2) {
+            entries.add(new BaseEntry<>(segment(keyAt(i)), segment(valueAt(i))));
+        }
+        Config config = new Config(basePath, 1 << 20).withBloomBitsPerKey(bloomBitsPerKey);
+        SSTableWriter.write(entries.iterator(), entries.size(), basePath.resolve(SSTABLE), config, Set.of());
+    }
+
+    private SSTable open(ResourceScope scope) throws IOException {
+        Path file = basePath.resolve(SSTABLE);
+        MemorySegment mapped = MemorySegment.mapFile(file, 0, Files.size(file), FileChannel.MapMode.READ_ONLY, scope);
+        return SSTable.open(mapped, Config.ChecksumVerification.ALWAYS, new ValueLog());
+    }
+
+    private static Entry<MemorySegment> get(SSTable sstable, String key) {
+        MemorySegment segment = segment(key);
+        return sstable.get(segment, BloomFilter.hash(segment));
+    }
+
+    private void flipByte(long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(basePath.resolve(SSTABLE).toFile(), "rw")) {
+            file.seek(offset);
+            int value = file.read();
+            file.seek(offset);
+            file.write(value ^ 1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+
+@Timeout(10)
+public class ChecksumTest extends BaseTest {
+
+    private static final int COUNT = 1_000;
+    private static final Path SSTABLE = Path.of("data0.dat");
+    // inside payload of the first block, past its codec id, raw size and checksum
+    private static final long FIRST_BLOCK_BYTE = 32;
+    // 13 footer fields and 2 trailer fields, the first footer field is entry count
+    private static final long FOOTER_SIZE = Long.BYTES * 15;
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void corruptedBlockFailsFirstRead() throws IOException {
+        write();
+        flipByte(FIRST_BLOCK_BYTE);
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config(Config.ChecksumVerification.FIRST_TOUCH))) {
+            IllegalStateException e = Assertions.assertThrows(
+                    IllegalStateException.class,
+                    () -> dao.get(segment(keyAt(0)))
+            );
+            Assertions.assertTrue(e.getMessage().contains("checksum mismatch"), e.getMessage());
+        }
+    }
+
+    @Test
+    void corruptedBlockFailsEveryRead() throws IOException {
+        write();
+        flipByte(FIRST_BLOCK_BYTE);
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config(Config.ChecksumVerification.ALWAYS))) {
+            for (int i = 0; i < 2; i++) {
+                Assertions.assertThrows(IllegalStateException.class, () -> dao.all().next());
+            }
+        }
+    }
+
+    @Test
+    void corruptedFooterFailsOpen() throws IOException {
+        write();
+        try (RandomAccessFile file = new RandomAccessFile(basePath.resolve(SSTABLE).toFile(), "r")) {
+            flipByte(file.length() - FOOTER_SIZE);
+        }
+
+        IllegalStateException e = Assertions.assertThrows(
+                IllegalStateException.class,
+                () -> new MemorySegmentDao(config(Config.ChecksumVerification.FIRST_TOUCH))
+        );
+        Assertions.assertTrue(e.getMessage().contains("footer checksum mismatch"), e.getMessage());
+    }
+
+    private void write() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(config(Config.ChecksumVerification.FIRST_TOUCH))) {
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(valueAt(i))));
+            }
+        }
+    }
+
+    private void flipByte(long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(basePath.resolve(SSTABLE).toFile(), "rw")) {
+            file.seek(offset);
+            int value = file.read();
+            file.seek(offset);
+            file.write(value ^ 1);
+        }
+    }
+
+    private Config config(Config.ChecksumVerification verification) {
+        return new Config(basePath, 1 << 20).withChecksumVerification(verification);
+    }
+}
@@ -0,0 +1,142 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+import static ru.mail.polis.artyomdrozdov.Segments.string;
+
+@Timeout(10)
+public class CompressionTest extends BaseTest {
+
+    private static final int COUNT = 10_000;
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void lz4RoundTrip() {
+        roundTrip(Config.Compression.LZ4);
+    }
+
+    @Test
+    void deflateRoundTrip() {
+        roundTrip(Config.Compression.DEFLATE);
+    }
+
+    @Test
+    void lz4Dao() throws IOException {
+        daoRoundTrip(Config.Compression.LZ4);
+    }
+
+    @Test
+    void deflateDao() throws IOException {
+        daoRoundTrip(Config.Compression.DEFLATE);
+    }
+
+    private static void roundTrip(Config.Compression compression) {
+        try (BlockCodec codec = BlockCodec.create(compression)) {
+            for (byte[] block : blocks()) {
+                byte[] compressed = new byte[block.length + 64];
+                int compressedSize = codec.compress(block, block.length, compressed);
+                // writer stores such blocks as is
+                if (compressedSize < 0) {
+                    continue;
+                }
+
+                byte[] decompressed = new byte[block.length];
+                MemorySegment src = MemorySegment.ofArray(Arrays.copyOf(compressed, compressedSize));
+                BlockCodec.forId(codec.id()).decompress(src, decompressed, block.length);
+                Assertions.assertArrayEquals(block, decompressed);
+            }
+
+            byte[] repetitive = new byte[64 * 1024];
+            Arrays.fill(repetitive, (byte) 'a');
+            byte[] compressed = new byte[repetitive.length];
+            Assertions.assertTrue(codec.compress(repetitive, repetitive.length, compressed) < repetitive.length / 8);
+        }
+    }
+
+    private static List<byte[]> blocks() {
+        Random random = new Random(1);
+        List<byte[]> blocks = new ArrayList<>();
+        blocks.add(new byte[]{42});
+
+        byte[] incompressible = new byte[4096];
+        random.nextBytes(incompressible);
+        blocks.add(incompressible);
+
+        // literal runs and matches longer than 15 bytes need length extension bytes, some of them 255
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append("key").append(i % 97).append(" value ").append("x".repeat(i % 300)).append('\n');
+        }
+        blocks.add(text.toString().getBytes(StandardCharsets.UTF_8));
+
+        // matches overlapping with their own output
+        byte[] periodic = new byte[10_000];
+        for (int i = 0; i < periodic.length; i++) {
+            periodic[i] = (byte) (i % 3);
+        }
+        blocks.add(periodic);
+
+        byte[] mixed = new byte[32 * 1024];
+        for (int i = 0; i < mixed.length; i += 512) {
+            byte[] chunk = new byte[Math.min(512, mixed.length - i)];
+            if (random.nextBoolean()) {
+                random.nextBytes(chunk);
+            }
+            System.arraycopy(chunk, 0, mixed, i, chunk.length);
+        }
+        blocks.add(mixed);
+        return blocks;
+    }
+
+    private void daoRoundTrip(Config.Compression compression) throws IOException {
+        Config config = new Config(basePath, 1 << 20)
+                .withCompression(compression)
+                .withChecksumVerification(Config.ChecksumVerification.FIRST_TOUCH);
+        try (MemorySegmentDao dao = new MemorySegmentDao(config)) {
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(new BaseEntry<>(segment(keyAt(i)), i % 10 == 0 ? null : segment(valueAt(i))));
+            }
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config)) {
+            assertEntries(dao);
+            dao.compact();
+            assertEntries(dao);
+        }
+    }
+
+    private void assertEntries(MemorySegmentDao dao) throws IOException {
+        Iterator<Entry<MemorySegment>> all = dao.all();
+        for (int i = 0; i < COUNT; i++) {
+            if (i % 10 == 0) {
+                Assertions.assertNull(dao.get(segment(keyAt(i))));
+                continue;
+            }
+            Entry<MemorySegment> entry = all.next();
+            Assertions.assertEquals(keyAt(i), string(entry.key()));
+            Assertions.assertEquals(valueAt(i), string(entry.value()));
+            Assertions.assertEquals(valueAt(i), string(dao.get(segment(keyAt(i))).value()));
+        }
+        Assertions.assertFalse(all.hasNext());
+    }
+}
@@ -0,0 +1,133 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of lock-free state swaps against the read-write lock they replaced.
+ * Threads mix point reads and upserts over their own keys, memtable is small, so flushes run during measurement.
+ * Locked mode is an emulated baseline: the old dao is gone, so its read lock is taken around every read and upsert
+ * on top of the current one (write lock was held only for swaps, so it is not emulated).
+ * Not a test, run it by hand: {@code ConcurrencyBenchmark [writePercent] [millis]}
+ */
+public final class ConcurrencyBenchmark {
+
+    private static final int KEYS_PER_THREAD = 1000;
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    private ConcurrencyBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int writePercent = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+
+        System.out.printf("%d%% upserts, Mops/s%n%7s %10s %10s%n", writePercent, "threads", "rwlock", "lock-free");
+        for (int threads : THREADS) {
+            double locked = run(threads, writePercent, millis, true);
+            double lockFree = run(threads, writePercent, millis, false);
+            System.out.printf("%7d %10.2f %10.2f%n", threads, locked, lockFree);
+        }
+    }
+
+    private static double run(int threads, int writePercent, long millis, boolean locked) throws Exception {
+        Path basePath = Files.createTempDirectory("concurrency-benchmark");
+        Config config = new Config(basePath, 4 << 20).withChecksumVerification(Config.ChecksumVerification.OFF);
+        try (MemorySegmentDao dao = new MemorySegmentDao(config)) {
+            for (int thread = 0; thread < threads; thread++) {
+                for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                    dao.upsert(new BaseEntry<>(key(thread, i), value(0)));
+                }
+            }
+            ReadWriteLock lock = locked ? new ReentrantReadWriteLock() : null;
+            LongAdder operations = new LongAdder();
+            AtomicBoolean stop = new AtomicBoolean();
+            CountDownLatch start = new CountDownLatch(1);
+
+            List<Thread> workers = new ArrayList<>(threads);
+            for (int thread = 0; thread < threads; thread++) {
+                int owner = thread;
+                Thread worker = new Thread(() -> work(dao, lock, owner, writePercent, start, stop, operations));
+                worker.start();
+                workers.add(worker);
+            }
+            start.countDown();
+            Thread.sleep(millis);
+            stop.set(true);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            return operations.sum() / (millis * 1000.0);
+        } finally {
+            try (Stream<Path> files = Files.walk(basePath)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private static void work(MemorySegmentDao dao, ReadWriteLock lock, int owner, int writePercent,
+                             CountDownLatch start, AtomicBoolean stop, LongAdder operations) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long version = 0;
+        long count = 0;
+        while (!stop.get()) {
+            MemorySegment key = key(owner, random.nextInt(KEYS_PER_THREAD));
+            boolean write = random.nextInt(100) < writePercent;
+            if (lock != null) {
+                lock.readLock().lock();
+            }
+            try {
+                if (write) {
+                    dao.upsert(new BaseEntry<>(key, value(++version)));
+                } else {
+                    Entry<MemorySegment> entry = dao.get(key);
+                    if (entry == null) {
+                        throw new IllegalStateException("Lost key");
+                    }
+                }
+            } finally {
+                if (lock != null) {
+                    lock.readLock().unlock();
+                }
+            }
+            count++;
+        }
+        operations.add(count);
+    }
+
+    private static MemorySegment key(int owner, int index) {
+        MemorySegment key = MemorySegment.ofArray(new byte[2 * Integer.BYTES]);
+        MemoryAccess.setIntAtOffset(key, 0, ByteOrder.BIG_ENDIAN, owner);
+        MemoryAccess.setIntAtOffset(key, Integer.BYTES, ByteOrder.BIG_ENDIAN, index);
+        return key;
+    }
+
+    private static MemorySegment value(long version) {
+        MemorySegment value = MemorySegment.ofArray(new byte[Long.BYTES]);
+        MemoryAccess.setLongAtOffset(value, 0, version);
+        return value;
+    }
+}
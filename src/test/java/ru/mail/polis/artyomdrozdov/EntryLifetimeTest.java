@@ -0,0 +1,151 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+import static ru.mail.polis.artyomdrozdov.Segments.string;
+
+@Timeout(10)
+public class EntryLifetimeTest extends BaseTest {
+
+    private static final int COUNT = 1_000;
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void pointReadFromMemoryAfterFlush() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            dao.upsert(memoryEntry("k1", "v1"));
+
+            Entry<MemorySegment> entry = dao.get(segment("k1"));
+            dao.flush();
+
+            Assertions.assertEquals("k1", string(entry.key()));
+            Assertions.assertEquals("v1", string(entry.value()));
+        }
+    }
+
+    @Test
+    void pointReadFromStorageAfterCompaction() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            dao.upsert(memoryEntry("k1", "v1"));
+            dao.flush();
+
+            Entry<MemorySegment> entry = dao.get(segment("k1"));
+            dao.upsert(memoryEntry("k1", "v2"));
+            dao.flush();
+            dao.compact();
+            System.gc();
+
+            Assertions.assertEquals("k1", string(entry.key()));
+            Assertions.assertEquals("v1", string(entry.value()));
+        }
+    }
+
+    @Test
+    void rangeReadFromMemoryAfterFlush()throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(memoryEntry(keyAt(i), valueAt(i)));
+            }
+
+            List<Entry<MemorySegment>> entries = collect(dao.all());
+            dao.flush();
+
+            assertEntries(entries);
+        }
+    }
+
+    @Test
+    void rangeReadFromStorageAfterCompaction() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(memoryEntry(keyAt(i), valueAt(i)));
+            }
+            dao.flush();
+
+            List<Entry<MemorySegment>> entries = collect(dao.all());
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(memoryEntry(keyAt(i), valueAt(i + 1)));
+            }
+            dao.flush();
+            dao.compact();
+            // exhausted iterator is unreachable now, storage it has read must stay mapped anyway
+            System.gc();
+
+            assertEntries(entries);
+        }
+    }
+
+    @Test
+    void iterationAcrossCompaction() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(memoryEntry(keyAt(i), valueAt(i)));
+            }
+            dao.flush();
+
+            Iterator<Entry<MemorySegment>> iterator = dao.all();
+            List<Entry<MemorySegment>> entries = new ArrayList<>();
+            entries.add(iterator.next());
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(memoryEntry(keyAt(i), valueAt(i + 1)));
+            }
+            dao.flush();
+            dao.compact();
+            System.gc();
+
+            entries.addAll(collect(iterator));
+            assertEntries(entries);
+        }
+    }
+
+    @Test
+    void readsAfterCloseFail() throws IOException {
+        MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20));
+        dao.upsert(memoryEntry("k1", "v1"));
+        dao.flush();
+        Entry<MemorySegment> entry = dao.get(segment("k1"));
+        dao.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> dao.get(segment("k1")));
+        Assertions.assertThrows(IllegalStateException.class, dao::all);
+        // storage is unmapped by close, not left to cleaner
+        Assertions.assertThrows(IllegalStateException.class, () -> entry.value().toByteArray());
+    }
+
+    private void assertEntries(List<Entry<MemorySegment>> entries) {
+        Assertions.assertEquals(COUNT, entries.size());
+        for (int i = 0; i < COUNT; i++) {
+            Assertions.assertEquals(keyAt(i), string(entries.get(i).key()));
+            Assertions.assertEquals(valueAt(i), string(entries.get(i).value()));
+        }
+    }
+
+    private static List<Entry<MemorySegment>> collect(Iterator<Entry<MemorySegment>> iterator) {
+        List<Entry<MemorySegment>> entries = new ArrayList<>();
+        while (iterator.hasNext()) {
+            entries.add(iterator.next());
+        }
+        return entries;
+    }
+
+    private static Entry<MemorySegment> memoryEntry(String key, String value) {
+        return new BaseEntry<>(segment(key), segment(value));
+    }
+}
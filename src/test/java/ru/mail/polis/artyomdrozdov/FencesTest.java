@@ -0,0 +1,105 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+
+@Timeout(10)
+public class FencesTest extends BaseTest {
+
+    private static final int MIN = 10;
+    private static final int MAX = 20;
+    // inside payload of the only block, past its codec id, raw size and checksum
+    private static final long BLOCK_BYTE = 32;
+    private static final Path SSTABLE = Path.of("data0.dat");
+
+    @TempDir
+    Path basePath;
+
+    // the only block is corrupted and verified on every read, so a lookup which touches it fails
+    @Test
+    void lookupOutsideFencesSkipsSSTable() throws IOException {
+        List<Entry<MemorySegment>> entries = new ArrayList<>();
+        for (int i = MIN; i <= MAX; i++) {
+            entries.add(new BaseEntry<>(segment(keyAt(i)), segment(valueAt(i))));
+        }
+        write(entries);
+        flipByte(BLOCK_BYTE);
+
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            SSTable sstable = open(scope);
+
+            Assertions.assertNull(get(sstable, keyAt(MIN - 1)));
+            Assertions.assertNull(get(sstable, keyAt(MAX + 1)));
+            Assertions.assertNull(get(sstable, ""));
+            Assertions.assertThrows(IllegalStateException.class, () -> get(sstable, keyAt(MIN)));
+            Assertions.assertThrows(IllegalStateException.class, () -> get(sstable, keyAt(MAX)));
+
+            // range end is exclusive
+            Assertions.assertFalse(sstable.mayOverlap(segment(keyAt(0)), segment(keyAt(MIN))));
+            Assertions.assertTrue(sstable.mayOverlap(segment(keyAt(0)), segment(keyAt(MIN + 1))));
+            Assertions.assertFalse(sstable.mayOverlap(segment(keyAt(MAX + 1)), null));
+            Assertions.assertTrue(sstable.mayOverlap(segment(keyAt(MAX)), null));
+            Assertions.assertTrue(sstable.mayOverlap(segment(keyAt(MIN + 1)), segment(keyAt(MIN + 2))));
+        }
+    }
+
+    @Test
+    void emptySSTableIsSkipped() throws IOException {
+        write(Collections.emptyList());
+
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            SSTable sstable = open(scope);
+
+            Assertions.assertNull(get(sstable, ""));
+            Assertions.assertNull(get(sstable, keyAt(MIN)));
+            Assertions.assertFalse(sstable.mayOverlap(segment(""), null));
+            Assertions.assertFalse(sstable.mayOverlap(segment(keyAt(0)), segment(keyAt(MAX))));
+        }
+    }
+
+    private void write(List<Entry<MemorySegment>> entries) throws IOException {
+        // bloom filter would skip absent keys on its own
+        Config config = new Config(basePath, 1 << 20).withBloomBitsPerKey(0);
+        SSTableWriter.write(entries.iterator(), entries.size(), basePath.resolve(SSTABLE), config, Set.of());
+    }
+
+    private SSTable open(ResourceScope scope) throws IOException {
+        Path file = basePath.resolve(SSTABLE);
+        MemorySegment mapped = MemorySegment.mapFile(file, 0, Files.size(file), FileChannel.MapMode.READ_ONLY, scope);
+        return SSTable.open(mapped, Config.ChecksumVerification.ALWAYS, new ValueLog());
+    }
+
+    private static Entry<MemorySegment> get(SSTable sstable, String key) {
+        MemorySegment segment = segment(key);
+        return sstable.get(segment, BloomFilter.hash(segment));
+    }
+
+    private void flipByte(long offset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(basePath.resolve(SSTABLE).toFile(), "rw")) {
+            file.seek(offset);
+            int value = file.read();
+            file.seek(offset);
+            file.write(value ^ 1);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+import static ru.mail.polis.artyomdrozdov.Segments.string;
+
+@Timeout(10)
+public class HashIndexTest extends BaseTest {
+
+    private static final int COUNT = 3_000;
+
+    @TempDir
+    Path basePath;
+
+    // the oldest sstable has every key, the next one deletes every third, the newest puts back every ninth
+    @Test
+    void lookupsThroughHashIndex() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            for (int i = 0; i < COUNT; i++) {
+                dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(valueAt(i))));
+            }
+            dao.flush();
+            for (int i = 0; i < COUNT; i += 3) {
+                dao.upsert(new BaseEntry<>(segment(keyAt(i)), null));
+            }
+            dao.flush();
+            for (int i = 0; i < COUNT; i += 9) {
+                dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(valueAt("v3", i))));
+            }
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            assertLookups(dao);
+            dao.compact();
+            assertLookups(dao);
+        }
+
+        // temporary files of hash index are removed with the rest of writer's ones
+        try (Stream<Path> files = Files.list(basePath)) {
+            List<String> names = files.map(file -> file.getFileName().toString()).collect(Collectors.toList());
+            boolean onlyData = names.stream().allMatch(name -> name.matches("(data|vlog)\\d+\\.dat"));
+            Assertions.assertTrue(onlyData, names.toString());
+        }
+    }
+
+    private void assertLookups(MemorySegmentDao dao) {
+        for (int i = 0; i < COUNT; i++) {
+            Entry<MemorySegment> entry = dao.get(segment(keyAt(i)));
+            if (i % 9 == 0) {
+                Assertions.assertEquals(valueAt("v3", i), string(entry.value()));
+            } else if (i % 3 == 0) {
+                Assertions.assertNull(entry, keyAt(i));
+            } else {
+                Assertions.assertEquals(valueAt(i), string(entry.value()));
+            }
+
+            // misses between existing keys and past the last one
+            Assertions.assertNull(dao.get(segment(keyAt(i) + "0")));
+            Assertions.assertNull(dao.get(segment(keyAt(COUNT + i))));
+        }
+    }
+
+    private Config config() {
+        return new Config(basePath, 1 << 20).withHashIndex(true);
+    }
+}
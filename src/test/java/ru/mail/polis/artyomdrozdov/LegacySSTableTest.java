@@ -0,0 +1,124 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+import static ru.mail.polis.artyomdrozdov.Segments.string;
+
+@Timeout(10)
+public class LegacySSTableTest extends BaseTest {
+
+    private static final int COUNT = 100;
+    private static final Path SSTABLE = Path.of("data0.dat");
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void readLegacyFile() throws IOException {
+        writeLegacy();
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            assertEntries(dao);
+
+            Iterator<Entry<MemorySegment>> range = dao.get(segment(keyAt(25)), segment(keyAt(35)));
+            for (int i = 25; i < 35; i++) {
+                if (i % 10 != 0) {
+                    Assertions.assertEquals(keyAt(i), string(range.next().key()));
+                }
+            }
+            Assertions.assertFalse(range.hasNext());
+        }
+    }
+
+    @Test
+    void mergeLegacyWithNewer() throws IOException {
+        writeLegacy();
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            dao.upsert(new BaseEntry<>(segment(keyAt(1)), null));
+            dao.upsert(new BaseEntry<>(segment(keyAt(10)), segment(valueAt(10))));
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            Assertions.assertNull(dao.get(segment(keyAt(1))));
+            Assertions.assertEquals(valueAt(10), string(dao.get(segment(keyAt(10))).value()));
+            Assertions.assertEquals(valueAt(2), string(dao.get(segment(keyAt(2))).value()));
+        }
+    }
+
+    @Test
+    void compactionUpgradesLegacyFile() throws IOException {
+        writeLegacy();
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            dao.compact();
+        }
+
+        ByteBuffer trailer = ByteBuffer.wrap(Files.readAllBytes(basePath.resolve(SSTABLE)))
+                .order(ByteOrder.nativeOrder());
+        Assertions.assertEquals(SSTable.MAGIC, trailer.getLong(trailer.limit() - Long.BYTES));
+        Assertions.assertEquals(SSTable.CURRENT_VERSION, trailer.getLong(trailer.limit() - SSTable.TRAILER_SIZE));
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            assertEntries(dao);
+        }
+    }
+
+    // (fileVersion)(entryCount)(hasTombstone)((entryPosition)...)((keySize/key/valueSize/value)...)
+    // every tenth entry is a tombstone
+    private void writeLegacy() throws IOException {
+        int indexStart = Long.BYTES * 3;
+        ByteBuffer sstable = ByteBuffer.allocate(64 * 1024).order(ByteOrder.nativeOrder());
+        sstable.putLong(LegacySSTable.VERSION).putLong(COUNT).putLong(1);
+        sstable.position(indexStart + Long.BYTES * COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            sstable.putLong(indexStart + Long.BYTES * i, sstable.position());
+            putRecord(sstable, keyAt(i));
+            if (i % 10 == 0) {
+                sstable.putLong(-1);
+            } else {
+                putRecord(sstable, valueAt(i));
+            }
+        }
+        byte[] bytes = new byte[sstable.position()];
+        sstable.flip().get(bytes);
+        Files.write(basePath.resolve(SSTABLE), bytes);
+    }
+
+    private void assertEntries(MemorySegmentDao dao) throws IOException {
+        Iterator<Entry<MemorySegment>> all = dao.all();
+        for (int i = 0; i < COUNT; i++) {
+            if (i % 10 == 0) {
+                Assertions.assertNull(dao.get(segment(keyAt(i))));
+                continue;
+            }
+            Entry<MemorySegment> entry = all.next();
+            Assertions.assertEquals(keyAt(i), string(entry.key()));
+            Assertions.assertEquals(valueAt(i), string(entry.value()));
+            Assertions.assertEquals(valueAt(i), string(dao.get(segment(keyAt(i))).value()));
+        }
+        Assertions.assertFalse(all.hasNext());
+    }
+
+    private static void putRecord(ByteBuffer buffer, String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        buffer.putLong(bytes.length).put(bytes);
+    }
+}
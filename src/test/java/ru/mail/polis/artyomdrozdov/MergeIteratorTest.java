@@ -0,0 +1,128 @@
+package ru.mail.polis.artyomdrozdov;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Entry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+@Timeout(10)
+public class MergeIteratorTest extends BaseTest {
+
+    private static final Comparator<Entry<String>> COMPARATOR = Comparator.comparing(Entry::key);
+    private static final int MAX_SOURCES = 9;
+    private static final int KEYS = 200;
+
+    @Test
+    void newestSourceWinsDuplicates() {
+        List<List<Entry<String>>> sources = new ArrayList<>();
+        for (int source = 0; source < 5; source++) {
+            List<Entry<String>> entries = new ArrayList<>();
+            for (int i = 0; i < KEYS; i++) {
+                entries.add(new BaseEntry<>(keyAt(i), valueAt(source)));
+            }
+            sources.add(entries);
+        }
+
+        List<Entry<String>> merged = merge(sources);
+
+        Assertions.assertEquals(KEYS, merged.size());
+        for (int i = 0; i < KEYS; i++) {
+            Assertions.assertEquals(keyAt(i), merged.get(i).key());
+            Assertions.assertEquals(valueAt(4), merged.get(i).value());
+        }
+    }
+
+    @Test
+    void emptySources() {
+        for (int count = 0; count <= MAX_SOURCES; count++) {
+            List<List<Entry<String>>> sources = new ArrayList<>();
+            for (int source = 0; source < count; source++) {
+                sources.add(List.of());
+            }
+            Iterator<Entry<String>> iterator = MergeIterator.of(iterators(sources), COMPARATOR);
+            Assertions.assertFalse(iterator.hasNext());
+            Assertions.assertThrows(NoSuchElementException.class, iterator::next);
+        }
+
+        // empty sources around the only non-empty one, and an empty newest source over older duplicates
+        List<List<Entry<String>>> sources = List.of(
+                List.of(),
+                List.of(new BaseEntry<>(keyAt(1), valueAt(1)), new BaseEntry<>(keyAt(2), valueAt(1))),
+                List.of(),
+                List.of(new BaseEntry<>(keyAt(2), valueAt(3))),
+                List.of()
+        );
+        Assertions.assertEquals(expected(sources), merge(sources));
+    }
+
+    @Test
+    void singleSource() {
+        List<Entry<String>> entries = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            entries.add(new BaseEntry<>(keyAt(i), valueAt(i)));
+        }
+
+        Assertions.assertEquals(entries, merge(List.of(entries)));
+    }
+
+    @Test
+    void anySourceCount() {
+        Random random = new Random(42);
+        // 3, 5, 6, 7 and 9 sources leave the tree with an unpaired leaf on some level
+        for (int count = 1; count <= MAX_SOURCES; count++) {
+            for (int attempt = 0; attempt < 20; attempt++) {
+                List<List<Entry<String>>> sources = new ArrayList<>();
+                for (int source = 0; source < count; source++) {
+                    List<Entry<String>> entries = new ArrayList<>();
+                    for (int i = 0; i < KEYS; i++) {
+                        if (random.nextInt(4) == 0) {
+                            entries.add(new BaseEntry<>(keyAt(i), valueAt(source)));
+                        }
+                    }
+                    sources.add(entries);
+                }
+
+                Assertions.assertEquals(expected(sources), merge(sources), count + " sources");
+            }
+        }
+    }
+
+    private static List<Entry<String>> merge(List<List<Entry<String>>> sources) {
+        List<Entry<String>> merged = new ArrayList<>();
+        Iterator<Entry<String>> iterator = MergeIterator.of(iterators(sources), COMPARATOR);
+        while (iterator.hasNext()) {
+            merged.add(iterator.next());
+        }
+        Assertions.assertThrows(NoSuchElementException.class, iterator::next);
+        return merged;
+    }
+
+    private static List<Entry<String>> expected(List<List<Entry<String>>> sources) {
+        Map<String, Entry<String>> newest = new TreeMap<>();
+        for (List<Entry<String>> source : sources) {
+            for (Entry<String> entry : source) {
+                newest.put(entry.key(), entry);
+            }
+        }
+        return new ArrayList<>(newest.values());
+    }
+
+    private static List<Iterator<Entry<String>>> iterators(List<List<Entry<String>>> sources) {
+        List<Iterator<Entry<String>>> iterators = new ArrayList<>(sources.size());
+        for (List<Entry<String>> source : sources) {
+            iterators.add(source.iterator());
+        }
+        return iterators;
+    }
+}
@@ -0,0 +1,109 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+import static ru.mail.polis.artyomdrozdov.Segments.string;
+
+// dao is abandoned without close, as if process was killed, only its write-ahead log is left to recover from
+@Timeout(10)
+public class RecoveryTest extends BaseTest {
+
+    private static final int COUNT = 1_000;
+    // crc, key size, value size, then 11 bytes of key and 11 bytes of value
+    private static final int RECORD_SIZE = Integer.BYTES + Long.BYTES * 2 + 11 + 11;
+    private static final Path LOG = Path.of("wal0.log");
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void recoverWithoutClose() throws IOException {
+        abandon(COUNT);
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            assertPresent(dao, 0, COUNT);
+        }
+    }
+
+    @Test
+    void recoverInChunksOfFlushThreshold() throws IOException {
+        abandon(COUNT);
+
+        // every entry takes more than 16 bytes in memtable, so the log can not be saved as a single sstable
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, COUNT * 4L))) {
+            assertPresent(dao, 0, COUNT);
+        }
+        Assertions.assertTrue(sstableCount() > 1);
+    }
+
+    @Test
+    void tornTail() throws IOException {
+        abandon(COUNT);
+        try (RandomAccessFile log = new RandomAccessFile(basePath.resolve(LOG).toFile(), "rw")) {
+            log.setLength(log.length() - RECORD_SIZE / 2);
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            assertPresent(dao, 0, COUNT - 1);
+            Assertions.assertNull(dao.get(segment(keyAt(COUNT - 1))));
+        }
+    }
+
+    @Test
+    void checksumMismatch() throws IOException {
+        abandon(COUNT);
+        int corrupted = COUNT / 2;
+        try (RandomAccessFile log = new RandomAccessFile(basePath.resolve(LOG).toFile(), "rw")) {
+            long lastValueByte = (long) (corrupted + 1) * RECORD_SIZE - 1;
+            log.seek(lastValueByte);
+            int value = log.read();
+            log.seek(lastValueByte);
+            log.write(value ^ 1);
+        }
+
+        // records after the corrupted one can not be trusted either, replay stops there
+        try (MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20))) {
+            assertPresent(dao, 0, corrupted);
+            for (int i = corrupted; i < COUNT; i++) {
+                Assertions.assertNull(dao.get(segment(keyAt(i))));
+            }
+        }
+    }
+
+    private void abandon(int count) throws IOException {
+        MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20));
+        for (int i = 0; i < count; i++) {
+            dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(valueAt(i))));
+        }
+        Assertions.assertEquals((long) count * RECORD_SIZE, Files.size(basePath.resolve(LOG)));
+    }
+
+    private void assertPresent(MemorySegmentDao dao, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Entry<MemorySegment> entry = dao.get(segment(keyAt(i)));
+            Assertions.assertNotNull(entry, keyAt(i));
+            Assertions.assertEquals(valueAt(i), string(entry.value()));
+        }
+    }
+
+    private long sstableCount() throws IOException {
+        try (Stream<Path> files = Files.list(basePath)) {
+            return files.filter(file -> file.getFileName().toString().matches("data\\d+\\.dat")).count();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+
+import java.nio.charset.StandardCharsets;
+
+// conversions shared by tests of this package
+final class Segments {
+
+    private Segments() {
+    }
+
+    static MemorySegment segment(String data) {
+        return MemorySegment.ofArray(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String string(MemorySegment segment) {
+        return new String(segment.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
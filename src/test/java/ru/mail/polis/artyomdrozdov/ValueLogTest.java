@@ -0,0 +1,140 @@
+package ru.mail.polis.artyomdrozdov;
+
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import static ru.mail.polis.artyomdrozdov.Segments.segment;
+import static ru.mail.polis.artyomdrozdov.Segments.string;
+
+@Timeout(10)
+public class ValueLogTest extends BaseTest {
+
+    private static final int COUNT = 100;
+    private static final long THRESHOLD = 16;
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void flushesAppendToOneLog() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            upsert(dao, 0, COUNT / 2, 0);
+            dao.flush();
+            upsert(dao, COUNT / 2, COUNT, 0);
+            dao.flush();
+        }
+
+        Assertions.assertTrue(Files.exists(log(0)));
+        Assertions.assertFalse(Files.exists(log(1)));
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            assertValues(dao, 0);
+        }
+    }
+
+    @Test
+    void writerStartsNextLogPastMaxSize() throws IOException {
+        MemorySegment value = segment("x".repeat(60));
+        try (ValueLog.Writer writer = new ValueLog.Writer(basePath, THRESHOLD, 100, Set.of())) {
+            Assertions.assertEquals(0, writer.append(value));
+            Assertions.assertEquals(0, writer.logId());
+            Assertions.assertEquals(60, writer.append(value));
+            Assertions.assertEquals(0, writer.logId());
+            Assertions.assertEquals(0, writer.append(value));
+            Assertions.assertEquals(1, writer.logId());
+        }
+
+        // latest log has room left, next writer continues it
+        try (ValueLog.Writer writer = new ValueLog.Writer(basePath, THRESHOLD, 100, Set.of())) {
+            Assertions.assertEquals(60, writer.append(value));
+            Assertions.assertEquals(1, writer.logId());
+        }
+        Assertions.assertEquals(120, Files.size(log(1)));
+
+        // collected log is never appended
+        try (ValueLog.Writer writer = new ValueLog.Writer(basePath, THRESHOLD, 1000, Set.of(1L))) {
+            Assertions.assertEquals(0, writer.append(value));
+            Assertions.assertEquals(2, writer.logId());
+        }
+    }
+
+    @Test
+    void garbageByDeadRatio() throws IOException {
+        Files.write(log(0), new byte[100]);
+        Files.write(log(1), new byte[100]);
+        Files.write(log(2), new byte[100]);
+
+        try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+            ValueLog valueLog = new ValueLog();
+            valueLog.open(basePath, scope, Set.of(0L, 1L));
+
+            // log which is referenced by no sstable is deleted on open
+            Assertions.assertFalse(Files.exists(log(2)));
+            Assertions.assertEquals(Set.of(1L), valueLog.garbage(Map.of(0L, 51L, 1L, 50L)));
+            Assertions.assertEquals(Set.of(0L, 1L), valueLog.garbage(Map.of()));
+            Assertions.assertEquals(Set.of(), valueLog.garbage(Map.of(0L, 100L, 1L, 100L)));
+        }
+    }
+
+    @Test
+    void compactionRewritesCollectedLog() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            upsert(dao, 0, COUNT, 0);
+            dao.flush();
+            upsert(dao, 0, COUNT, 1);
+            dao.flush();
+            // shadowed values stay referenced until compaction drops the older sstable,
+            // only then half of the log is dead and the next compaction moves its live values
+            dao.compact();
+            Assertions.assertTrue(Files.exists(log(0)));
+            dao.compact();
+            assertValues(dao, 1);
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            assertValues(dao, 1);
+        }
+        Assertions.assertFalse(Files.exists(log(0)));
+        Assertions.assertEquals(COUNT * (long) value(0, 1).length(), Files.size(log(1)));
+    }
+
+    private void upsert(MemorySegmentDao dao, int from, int to, int generation) {
+        for (int i = from; i < to; i++) {
+            dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(value(i, generation))));
+        }
+    }
+
+    private void assertValues(MemorySegmentDao dao, int generation) {
+        for (int i = 0; i < COUNT; i++) {
+            Entry<MemorySegment> entry = dao.get(segment(keyAt(i)));
+            Assertions.assertNotNull(entry, keyAt(i));
+            Assertions.assertEquals(value(i, generation), string(entry.value()));
+        }
+    }
+
+    // long enough to be separated
+    private String value(int index, int generation) {
+        return generation + "-" + valueAt(index) + "-" + "v".repeat((int) THRESHOLD);
+    }
+
+    private Path log(long logId) {
+        return basePath.resolve("vlog" + logId + ".dat");
+    }
+
+    private Config config() {
+        return new Config(basePath, 1 << 20).withValueSeparationThresholdBytes(THRESHOLD);
+    }
+}
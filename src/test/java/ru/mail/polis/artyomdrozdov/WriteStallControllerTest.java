@@ -0,0 +1,68 @@
+package ru.mail.polis.artyomdrozdov;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import ru.mail.polis.BaseTest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Timeout(10)
+public class WriteStallControllerTest extends BaseTest {
+
+    private static final long THRESHOLD = 1024;
+    private static final long TIMEOUT_MILLIS = 200;
+
+    @Test
+    void noStallBelowSlowdown() {
+        WriteStallController controller = new WriteStallController(THRESHOLD, TIMEOUT_MILLIS);
+
+        controller.beforeWrite(() -> 0);
+        controller.beforeWrite(() -> THRESHOLD / 2);
+
+        Assertions.assertEquals(0, controller.stalledNanos());
+    }
+
+    @Test
+    void slowdownBeforeThreshold() {
+        WriteStallController controller = new WriteStallController(THRESHOLD, TIMEOUT_MILLIS);
+
+        controller.beforeWrite(() -> THRESHOLD - 1);
+
+        Assertions.assertTrue(controller.stalledNanos() > 0);
+    }
+
+    @Test
+    void timeoutWhenFlushDoesNotFinish() {
+        WriteStallController controller = new WriteStallController(THRESHOLD, TIMEOUT_MILLIS);
+
+        long start = System.nanoTime();
+        Assertions.assertThrows(IllegalStateException.class, () -> controller.beforeWrite(() -> THRESHOLD));
+
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS));
+    }
+
+    @Test
+    void resumeWhenFlushFinishes() throws InterruptedException {
+        WriteStallController controller = new WriteStallController(THRESHOLD, TimeUnit.SECONDS.toMillis(5));
+        AtomicLong backlog = new AtomicLong(THRESHOLD);
+
+        Thread flush = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backlog.set(0);
+            controller.flushFinished();
+        });
+        flush.start();
+        controller.beforeWrite(backlog::get);
+        flush.join();
+
+        Assertions.assertEquals(0, backlog.get());
+        Assertions.assertTrue(controller.stalledNanos() > 0);
+    }
+}
@@ -0,0 +1,82 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Timeout(10)
+public class CompactionUpgradeTest extends BaseTest {
+
+    private static final long VERSION = 3;
+    private static final long VERSION_WITHOUT_PREFIXES = 0;
+    private static final int COUNT = 100;
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void singleOldSSTableIsRewritten() throws IOException {
+        // (fileVersion)(entryCount)((entryPosition)...)((keySize/key/valueSize/value)...)
+        int dataStart = Long.BYTES * 2 + Long.BYTES * COUNT;
+        ByteBuffer sstable = ByteBuffer.allocate(64 * 1024).order(ByteOrder.nativeOrder());
+        sstable.putLong(VERSION_WITHOUT_PREFIXES).putLong(COUNT);
+        sstable.position(dataStart);
+        for (int i = 0; i < COUNT; i++) {
+            sstable.putLong(Long.BYTES * 2 + Long.BYTES * i, sstable.position());
+            putRecord(sstable, keyAt(i));
+            putRecord(sstable, valueAt(i));
+        }
+        byte[] bytes = new byte[sstable.position()];
+        sstable.flip().get(bytes);
+        Files.write(basePath.resolve("data0.dat"), bytes);
+
+        MemorySegmentDao dao = new MemorySegmentDao(new Config(basePath, 1 << 20));
+        dao.compact();
+        dao.close();
+
+        List<Path> files = sstables();
+        Assertions.assertEquals(1, files.size());
+        long version = ByteBuffer.wrap(Files.readAllBytes(files.get(0))).order(ByteOrder.nativeOrder()).getLong(0);
+        Assertions.assertEquals(VERSION, version);
+
+        dao = new MemorySegmentDao(new Config(basePath, 1 << 20));
+        Iterator<Entry<MemorySegment>> all = dao.all();
+        for (int i = 0; i < COUNT; i++) {
+            Entry<MemorySegment> entry = all.next();
+            Assertions.assertEquals(keyAt(i), string(entry.key()));
+            Assertions.assertEquals(valueAt(i), string(entry.value()));
+        }
+        Assertions.assertFalse(all.hasNext());
+        dao.close();
+    }
+
+    private static void putRecord(ByteBuffer buffer, String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        buffer.putLong(bytes.length).put(bytes);
+    }
+
+    private List<Path> sstables() throws IOException {
+        try (Stream<Path> files = Files.list(basePath)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".dat")).toList();
+        }
+    }
+
+    private static String string(MemorySegment segment) {
+        return new String(segment.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Cursor;
+import ru.mail.polis.Dao;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// every check runs against cursor of dao and against default adapter of its iterator (see Dao.cursor)
+@Timeout(10)
+public class CursorTest extends BaseTest {
+
+    private static final int COUNT = 1_000;
+    private static final int SSTABLES = 3;
+
+    @TempDir
+    Path basePath;
+
+    private final NavigableMap<String, String> expected = new TreeMap<>();
+
+    @Test
+    void singleSource() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            write(dao, 0);
+            assertCursors(dao);
+        }
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            assertCursors(dao);
+        }
+    }
+
+    // sstables and memory overlap, newer ones overwrite and delete keys of older ones
+    @Test
+    void overlappingSources() throws IOException {
+        for (int generation = 0; generation < SSTABLES; generation++) {
+            try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+                write(dao, generation);
+            }
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            write(dao, SSTABLES);
+            assertCursors(dao);
+        }
+    }
+
+    @Test
+    void emptyDao() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            assertCursors(dao);
+        }
+    }
+
+    // key and value are views, the ones taken before next() still show their entry
+    @Test
+    void viewsAfterNext() throws IOException {
+        for (int generation = 0; generation < SSTABLES; generation++) {
+            try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+                write(dao, generation);
+            }
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            write(dao, SSTABLES);
+            for (Cursor<MemorySegment> cursor : cursors(dao, null, null)) {
+                List<MemorySegment> keys = new ArrayList<>();
+                List<MemorySegment> values = new ArrayList<>();
+                while (cursor.next()) {
+                    keys.add(cursor.key());
+                    values.add(cursor.value());
+                }
+                Assertions.assertFalse(cursor.next());
+
+                int i = 0;
+                for (Map.Entry<String, String> entry : expected.entrySet()) {
+                    Assertions.assertEquals(entry.getKey(), string(keys.get(i)));
+                    Assertions.assertEquals(entry.getValue(), string(values.get(i)));
+                    i++;
+                }
+                Assertions.assertEquals(expected.size(), keys.size());
+            }
+        }
+    }
+
+    private void assertCursors(MemorySegmentDao dao) throws IOException {
+        assertRange(dao, null, null);
+        assertRange(dao, keyAt(COUNT / 3), null);
+        assertRange(dao, null, keyAt(COUNT / 3));
+        assertRange(dao, keyAt(10), keyAt(COUNT - 10));
+        // bounds between keys and outside of all of them
+        assertRange(dao, keyAt(10) + "0", keyAt(20) + "0");
+        assertRange(dao, "", keyAt(0));
+        assertRange(dao, keyAt(2 * COUNT), null);
+        // empty range
+        assertRange(dao, keyAt(15), keyAt(15));
+    }
+
+    private void assertRange(MemorySegmentDao dao, String from, String to) throws IOException {
+        NavigableMap<String, String> range = expected;
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (to != null) {
+            range = range.headMap(to, false);
+        }
+
+        for (Cursor<MemorySegment> cursor : cursors(dao, from, to)) {
+            for (Map.Entry<String, String> entry : range.entrySet()) {
+                Assertions.assertTrue(cursor.next(), entry.getKey());
+                Assertions.assertEquals(entry.getKey(), string(cursor.key()));
+                Assertions.assertEquals(entry.getValue(), string(cursor.value()));
+                // the same view until next()
+                Assertions.assertEquals(entry.getKey(), string(cursor.key()));
+            }
+            Assertions.assertFalse(cursor.next(), from + ".." + to);
+        }
+    }
+
+    private static List<Cursor<MemorySegment>> cursors(MemorySegmentDao dao, String from, String to)
+            throws IOException {
+        MemorySegment fromSegment = segment(from);
+        MemorySegment toSegment = segment(to);
+        Dao<MemorySegment, Entry<MemorySegment>> defaultCursor = new Dao<>() {
+            @Override
+            public Iterator<Entry<MemorySegment>> get(MemorySegment keyFrom, MemorySegment keyTo) {
+                return dao.get(keyFrom, keyTo);
+            }
+
+            @Override
+            public void upsert(Entry<MemorySegment> entry) {
+                dao.upsert(entry);
+            }
+        };
+        return List.of(dao.cursor(fromSegment, toSegment), defaultCursor.cursor(fromSegment, toSegment));
+    }
+
+    // generation 0 puts every key, the next ones overwrite every (generation + 2)-th key
+    // and delete every (generation + 3)-th one, then put a few keys past the end
+    private void write(MemorySegmentDao dao, int generation) {
+        for (int i = 0; i < COUNT; i++) {
+            if (generation == 0 || i % (generation + 2) == 0) {
+                upsert(dao, keyAt(i), valueAt("v" + generation + "_", i));
+            }
+            if (generation > 0 && i % (generation + 3) == 0) {
+                upsert(dao, keyAt(i), null);
+            }
+        }
+        for (int i = COUNT; i < COUNT + generation * 10; i++) {
+            upsert(dao, keyAt(i), valueAt("v" + generation + "_", i));
+        }
+    }
+
+    private void upsert(MemorySegmentDao dao, String key, String value) {
+        dao.upsert(new BaseEntry<>(segment(key), segment(value)));
+        if (value == null) {
+            expected.remove(key);
+        } else {
+            expected.put(key, value);
+        }
+    }
+
+    private Config config() {
+        return new Config(basePath, 1 << 20);
+    }
+
+    private static MemorySegment segment(String data) {
+        return data == null ? null : MemorySegment.ofArray(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(MemorySegment segment) {
+        return new String(segment.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
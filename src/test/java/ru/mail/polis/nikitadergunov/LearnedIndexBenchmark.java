@@ -0,0 +1,116 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Random point gets from one sstable with learned index against the same sstable searched by binary search.
+ * Keys are either sequential or random 8-byte big-endian numbers, or "user%012d" strings.
+ * Every configuration is measured twice in turn, so that JIT warm-up does not favour either of them.
+ * Not a test, run it by hand: {@code LearnedIndexBenchmark [entries] [sequential|random|strings...]}
+ */
+public final class LearnedIndexBenchmark {
+
+    private static final int WARM_UP_LOOKUPS = 300_000;
+    private static final int LOOKUPS = 2_000_000;
+
+    private LearnedIndexBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        String[] kinds = args.length > 1
+                ? Arrays.copyOfRange(args, 1, args.length)
+                : new String[]{"sequential", "random", "strings"};
+
+        System.out.printf("%10s %10s %8s %12s %10s%n", "keys", "entries", "learned", "file bytes", "get ns/op");
+        for (String kind : kinds) {
+            MemorySegment[] keys = keys(kind, entries);
+            Map<MemorySegment, Entry<MemorySegment>> sstable = new TreeMap<>(MemorySegmentComparator.INSTANCE);
+            for (MemorySegment key : keys) {
+                sstable.put(key, new BaseEntry<>(key, MemorySegment.ofArray(new byte[16])));
+            }
+            for (boolean learned : new boolean[]{false, true, false, true}) {
+                run(kind, keys, sstable, learned);
+            }
+        }
+    }
+
+    private static void run(String kind, MemorySegment[] keys, Map<MemorySegment, Entry<MemorySegment>> sstable,
+                            boolean learned) throws IOException {
+        Path basePath = Files.createTempDirectory("learned-index-benchmark");
+        try {
+            Config config = new Config(basePath, 0)
+                    .withChecksumVerification(Config.ChecksumVerification.OFF)
+                    .withLearnedIndex(learned);
+            // load finds the index of the next file to save
+            Storage.load(config).close();
+            Storage.save(config, sstable.values());
+            long fileBytes = size(basePath);
+
+            Storage storage = Storage.load(config);
+            try {
+                Random random = new Random(keys.length);
+                long found = 0;
+                for (int i = 0; i < WARM_UP_LOOKUPS; i++) {
+                    found += storage.get(keys[random.nextInt(keys.length)]) == null ? 0 : 1;
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    found += storage.get(keys[random.nextInt(keys.length)]) == null ? 0 : 1;
+                }
+                long nanos = System.nanoTime() - start;
+                if (found != WARM_UP_LOOKUPS + LOOKUPS) {
+                    throw new IllegalStateException("Lost keys");
+                }
+
+                System.out.printf("%10s %10d %8s %12d %10.1f%n", kind, keys.length, learned, fileBytes,
+                        (double) nanos / LOOKUPS);
+            } finally {
+                storage.close();
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(basePath)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private static MemorySegment[] keys(String kind, int entries) {
+        Random random = new Random(7);
+        MemorySegment[] keys = new MemorySegment[entries];
+        for (int i = 0; i < entries; i++) {
+            if (kind.equals("strings")) {
+                String key = String.format("user%012d", random.nextInt(Integer.MAX_VALUE));
+                keys[i] = MemorySegment.ofArray(key.getBytes(StandardCharsets.UTF_8));
+            } else {
+                keys[i] = MemorySegment.ofArray(new byte[Long.BYTES]);
+                long value = kind.equals("sequential") ? i * 3L : random.nextLong() >>> 1;
+                MemoryAccess.setLongAtOffset(keys[i], 0, ByteOrder.BIG_ENDIAN, value);
+            }
+        }
+        return keys;
+    }
+
+    private static long size(Path basePath) throws IOException {
+        try (Stream<Path> files = Files.list(basePath)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+@Timeout(10)
+public class LearnedIndexTest extends BaseTest {
+
+    private static final long VERSION_WITH_LEARNED_INDEX = 2;
+    private static final int COUNT = 2_000;
+    // the first 8 bytes of every key of the run are the same, so the model knows only where the run starts
+    private static final String RUN_PREFIX = "rSHARED8";
+
+    @TempDir
+    Path basePath;
+
+    private final NavigableMap<String, String> expected = new TreeMap<>();
+
+    // keys of three shapes: dense, sharing 8-byte prefix and sparse with growing gaps,
+    // the last ones need many segments, so there are keys between segment starts
+    @Test
+    void lookupsWithinAndOutsideOfEpsilon() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            for (int i = 0; i < COUNT; i++) {
+                upsert(dao, keyAt("a", i), valueAt(i));
+                upsert(dao, RUN_PREFIX + String.format("%05d", i), valueAt(i));
+                upsert(dao, keyAt("z", i * i), valueAt(i));
+            }
+        }
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            assertLearnedIndex();
+            for (String key : expected.keySet()) {
+                assertGet(dao, key);
+                // between the key and the next one
+                assertGet(dao, key + "0");
+            }
+            for (int i = 0; i < COUNT; i++) {
+                assertGet(dao, keyAt("z", i * i + i + 1));
+            }
+            // shorter than the keys of the run and greater than all of them, with the same 8-byte prefix
+            assertGet(dao, RUN_PREFIX);
+            assertGet(dao, RUN_PREFIX + "9");
+            // below and above of all keys
+            assertGet(dao, "");
+            assertGet(dao, "0");
+            assertGet(dao, "zz");
+
+            assertRange(dao, null, null);
+            assertRange(dao, RUN_PREFIX + "01000", RUN_PREFIX + "01500");
+            assertRange(dao, keyAt("a", COUNT / 2), RUN_PREFIX + "00100");
+            assertRange(dao, RUN_PREFIX + "01999", keyAt("z", 1000));
+            assertRange(dao, keyAt("z", 5000), keyAt("z", 50_000_000));
+        }
+    }
+
+    // prefixes of keys which do not start with the prefix common for sstable mean nothing,
+    // so prediction for them may be anywhere and the rest of index is searched on both sides of the window
+    @Test
+    void keysOutsideOfCommonPrefix() throws IOException {
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            for (int i = 0; i < COUNT; i++) {
+                upsert(dao, keyAt(i), valueAt(i));
+            }
+        }
+
+        // predicted near the end, but less than all keys
+        String below = "j" + "ÿ".repeat(Long.BYTES);
+        // predicted near the start, but greater than all keys
+        String above = "l" + "\u0000".repeat(Long.BYTES);
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            assertLearnedIndex();
+            assertGet(dao, below);
+            assertGet(dao, above);
+            assertRange(dao, below, keyAt(10));
+            assertRange(dao, below, above);
+            assertRange(dao, keyAt(COUNT - 10), above);
+            assertRange(dao, above, null);
+        }
+    }
+
+    private void assertGet(MemorySegmentDao dao, String key) {
+        Entry<MemorySegment> entry = dao.get(segment(key));
+        if (expected.containsKey(key)) {
+            Assertions.assertNotNull(entry, key);
+            Assertions.assertEquals(expected.get(key), string(entry.value()));
+        } else {
+            Assertions.assertNull(entry, key);
+        }
+    }
+
+    private void assertRange(MemorySegmentDao dao, String from, String to) {
+        NavigableMap<String, String> range = expected;
+        if (from != null) {
+            range = range.tailMap(from, true);
+        }
+        if (to != null) {
+            range = range.headMap(to, false);
+        }
+
+        Iterator<Entry<MemorySegment>> iterator = dao.get(segment(from), segment(to));
+        for (Map.Entry<String, String> entry : range.entrySet()) {
+            Assertions.assertTrue(iterator.hasNext(), entry.getKey());
+            Entry<MemorySegment> actual = iterator.next();
+            Assertions.assertEquals(entry.getKey(), string(actual.key()));
+            Assertions.assertEquals(entry.getValue(), string(actual.value()));
+        }
+        Assertions.assertFalse(iterator.hasNext(), from + ".." + to);
+    }
+
+    private void assertLearnedIndex() throws IOException {
+        try (Stream<Path> files = Files.list(basePath)) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".dat")).toList()) {
+                long version = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.nativeOrder()).getLong(0);
+                Assertions.assertEquals(VERSION_WITH_LEARNED_INDEX, version);
+            }
+        }
+    }
+
+    private void upsert(MemorySegmentDao dao, String key, String value) {
+        dao.upsert(new BaseEntry<>(segment(key), segment(value)));
+        expected.put(key, value);
+    }
+
+    private Config config() {
+        return new Config(basePath, 1 << 20).withLearnedIndex(true);
+    }
+
+    private static MemorySegment segment(String data) {
+        return data == null ? null : MemorySegment.ofArray(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(MemorySegment segment) {
+        return new String(segment.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,119 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+import ru.mail.polis.MemorySegmentComparator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Timeout(10)
+public class ParallelStreamTest extends BaseTest {
+
+    private static final int COUNT = 5_000;
+    private static final int SSTABLES = 4;
+    private static final int PARTS = 16;
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void parallelStreamMatchesIterator() throws IOException {
+        writeSSTables();
+
+        try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+            // memory overwrites a part of the range and deletes another one
+            for (int i = COUNT / 4; i < COUNT / 2; i++) {
+                String value = i % 2 == 0 ? null : valueAt("m", i);
+                dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(value)));
+            }
+
+            assertStream(dao, null, null);
+            assertStream(dao, keyAt(COUNT / 3), null);
+            assertStream(dao, null, keyAt(COUNT / 3));
+            assertStream(dao, keyAt(100) + "0", keyAt(COUNT - 100) + "0");
+            // empty ranges: no keys at all, the same bound and only tombstones
+            assertStream(dao, keyAt(2 * COUNT), null);
+            assertStream(dao, keyAt(100), keyAt(100));
+            assertStream(dao, keyAt(COUNT / 4), keyAt(COUNT / 4 + 1));
+        }
+    }
+
+    @Test
+    void splitKeysAreInsideRange() throws IOException {
+        writeSSTables();
+
+        try (Storage storage = Storage.load(config())) {
+            assertSplitKeys(storage, segment(""), null);
+            assertSplitKeys(storage, segment(keyAt(COUNT / 3)), segment(keyAt(COUNT / 2)));
+            Assertions.assertTrue(storage.splitKeys(segment(keyAt(100)), segment(keyAt(100)), PARTS).isEmpty());
+            Assertions.assertTrue(storage.splitKeys(segment(keyAt(2 * COUNT)), null, PARTS).isEmpty());
+        }
+    }
+
+    private static void assertSplitKeys(Storage storage, MemorySegment from, MemorySegment to) {
+        List<MemorySegment> splitKeys = storage.splitKeys(from, to, PARTS);
+        Assertions.assertFalse(splitKeys.isEmpty());
+        Assertions.assertTrue(splitKeys.size() < PARTS);
+        MemorySegment previous = from;
+        for (MemorySegment key : splitKeys) {
+            Assertions.assertTrue(MemorySegmentComparator.INSTANCE.compare(previous, key) < 0);
+            previous = key;
+        }
+        Assertions.assertTrue(to == null || MemorySegmentComparator.INSTANCE.compare(previous, to) < 0);
+    }
+
+    private void assertStream(MemorySegmentDao dao, String from, String to) {
+        List<Entry<MemorySegment>> parallel = dao.stream(segment(from), segment(to))
+                .parallel()
+                .collect(Collectors.toList());
+
+        Iterator<Entry<MemorySegment>> sequential = dao.get(segment(from), segment(to));
+        for (Entry<MemorySegment> entry : parallel) {
+            Assertions.assertTrue(sequential.hasNext(), string(entry.key()));
+            Entry<MemorySegment> expected = sequential.next();
+            Assertions.assertEquals(string(expected.key()), string(entry.key()));
+            Assertions.assertEquals(string(expected.value()), string(entry.value()));
+        }
+        Assertions.assertFalse(sequential.hasNext(), from + ".." + to);
+    }
+
+    // sstables of different sizes, newer ones overwrite every third key of their part and delete every fifth
+    private void writeSSTables() throws IOException {
+        for (int sstable = 0; sstable < SSTABLES; sstable++) {
+            try (MemorySegmentDao dao = new MemorySegmentDao(config())) {
+                for (int i = 0; i < COUNT; i++) {
+                    if (sstable == 0 || i % 3 == 0 && i < COUNT * sstable / SSTABLES) {
+                        dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(valueAt("v" + sstable, i))));
+                    } else if (i % 5 == 0) {
+                        dao.upsert(new BaseEntry<>(segment(keyAt(i)), null));
+                    }
+                }
+            }
+        }
+    }
+
+    private Config config() {
+        return new Config(basePath, 1 << 20);
+    }
+
+    private static MemorySegment segment(String data) {
+        return data == null ? null : MemorySegment.ofArray(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(MemorySegment segment) {
+        return new String(segment.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,112 @@
+package ru.mail.polis.nikitadergunov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.MemorySegmentComparator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+@Timeout(10)
+public class TopLevelIndexTest extends BaseTest {
+
+    private static final long PARTITION_SIZE = 8;
+    private static final int COUNT = 200;
+    private static final int RUN_START = 50;
+    private static final int RUN_END = 90;
+    // prefix of all keys from keyAt("k", 0) to keyAt("k", COUNT - 1)
+    private static final String COMMON_PREFIX = "k0000000";
+    // the first 8 bytes after the common prefix are the same for every key of the run
+    private static final String RUN_PREFIX = "k00000000" + RUN_START + "_SHARED8_";
+
+    private final List<MemorySegment> keys = new ArrayList<>();
+
+    @Test
+    void keysAtPartitionBoundaries() {
+        TopLevelIndex topLevelIndex = create();
+        for (int i = 0; i < keys.size(); i++) {
+            assertPartitions(topLevelIndex, keys.get(i));
+            // between the key and the next one
+            assertPartitions(topLevelIndex, segment(string(keys.get(i)) + "0"));
+        }
+        for (long start = 0; start < keys.size(); start += PARTITION_SIZE) {
+            long partitions = topLevelIndex.partitions(keys.get((int) start));
+            Assertions.assertTrue(TopLevelIndex.firstPartition(partitions) <= start / PARTITION_SIZE);
+        }
+    }
+
+    // the run spans several partitions, which start with the same prefix
+    @Test
+    void keysWithEqualPrefixes() {
+        TopLevelIndex topLevelIndex = create();
+        assertPartitions(topLevelIndex, segment(RUN_PREFIX));
+        assertPartitions(topLevelIndex, segment(RUN_PREFIX + "0"));
+        assertPartitions(topLevelIndex, segment(RUN_PREFIX + "9"));
+        assertPartitions(topLevelIndex, segment(RUN_PREFIX + "\u0000"));
+
+        long partitions = topLevelIndex.partitions(keys.get(RUN_END - 1));
+        Assertions.assertTrue(TopLevelIndex.endPartition(partitions) - TopLevelIndex.firstPartition(partitions) > 2);
+    }
+
+    @Test
+    void keysOutsideOfPartitions() {
+        TopLevelIndex topLevelIndex = create();
+        int partitionCount = (int) ((COUNT + PARTITION_SIZE - 1) / PARTITION_SIZE);
+        // outside of common prefix
+        Assertions.assertEquals(0, topLevelIndex.partitions(segment("")));
+        Assertions.assertEquals(0, topLevelIndex.partitions(segment("a")));
+        Assertions.assertEquals((long) partitionCount << 32 | partitionCount, topLevelIndex.partitions(segment("z")));
+        // with common prefix, but before the first key and after the last one
+        for (String key : List.of("k", "k00", COMMON_PREFIX, COMMON_PREFIX + "\u0000",
+                COMMON_PREFIX + "z", COMMON_PREFIX + "ÿ".repeat(Long.BYTES + 1))) {
+            assertPartitions(topLevelIndex, segment(key));
+        }
+        Assertions.assertEquals(0, TopLevelIndex.firstPartition(topLevelIndex.partitions(segment(COMMON_PREFIX))));
+    }
+
+    // the key, if present, or the place where it would be inserted is inside of the partitions
+    private void assertPartitions(TopLevelIndex topLevelIndex, MemorySegment key) {
+        int index = 0;
+        while (index < keys.size() && MemorySegmentComparator.INSTANCE.compare(keys.get(index), key) < 0) {
+            index++;
+        }
+        boolean found = index < keys.size() && MemorySegmentComparator.INSTANCE.compare(keys.get(index), key) == 0;
+
+        long partitions = topLevelIndex.partitions(key);
+        long from = TopLevelIndex.firstPartition(partitions) * PARTITION_SIZE;
+        long to = Math.min(TopLevelIndex.endPartition(partitions) * PARTITION_SIZE, keys.size());
+        Assertions.assertTrue(from <= index, string(key));
+        Assertions.assertTrue(found ? index < to : index <= to, string(key));
+    }
+
+    // ascending keys: dense ones, then a run with equal prefixes, then the rest of dense ones
+    private TopLevelIndex create() {
+        for (int i = 0; i < COUNT; i++) {
+            keys.add(segment(i >= RUN_START && i < RUN_END
+                    ? RUN_PREFIX + String.format("%05d", i)
+                    : keyAt("k", i)));
+        }
+        keys.sort(MemorySegmentComparator.INSTANCE);
+        Assertions.assertEquals(RUN_PREFIX + String.format("%05d", RUN_START), string(keys.get(RUN_START)));
+
+        MemorySegment first = keys.get(0);
+        long mismatch = first.mismatch(keys.get(keys.size() - 1));
+        TopLevelIndex topLevelIndex = TopLevelIndex.create(first.asSlice(0, mismatch), PARTITION_SIZE, keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            topLevelIndex.add(keys.get(i), i);
+        }
+        return topLevelIndex;
+    }
+
+    private static MemorySegment segment(String data) {
+        return MemorySegment.ofArray(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(MemorySegment segment) {
+        return new String(segment.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
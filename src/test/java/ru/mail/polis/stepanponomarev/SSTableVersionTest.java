@@ -0,0 +1,100 @@
+package ru.mail.polis.stepanponomarev;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseTest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+@Timeout(10)
+public class SSTableVersionTest extends BaseTest {
+
+    private static final long TOMBSTONE_TAG = -1;
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void legacyTable() throws IOException {
+        // lengths are 8-byte longs and index has no header
+        ByteBuffer table = ByteBuffer.allocate(1024).order(ByteOrder.nativeOrder());
+        ByteBuffer index = ByteBuffer.allocate(1024).order(ByteOrder.nativeOrder());
+        index.putLong(table.position());
+        putLegacy(table, "k1");
+        table.putLong(1);
+        putLegacy(table, "v1");
+        index.putLong(table.position());
+        putLegacy(table, "k2");
+        table.putLong(2);
+        table.putLong(TOMBSTONE_TAG);
+        index.putLong(table.position());
+        putLegacy(table, "k3");
+        table.putLong(3);
+        putLegacy(table, "v3");
+        Path sstableDir = Files.createDirectory(basePath.resolve("SSTable_0"));
+        Files.write(sstableDir.resolve("sstable.data"), bytes(table));
+        Files.write(sstableDir.resolve("sstable.index"), bytes(index));
+
+        LSMDao dao = new LSMDao(basePath);
+        Assertions.assertEquals("v1", string(dao.get(segment("k1")).value()));
+        Assertions.assertNull(dao.get(segment("k2")));
+        Assertions.assertEquals("v3", string(dao.get(segment("k3")).value()));
+        Iterator<TimestampEntry> fromSecond = dao.get(segment("k2"), null);
+        Assertions.assertEquals("k3", string(fromSecond.next().key()));
+        Assertions.assertFalse(fromSecond.hasNext());
+        dao.close();
+    }
+
+    @Test
+    void currentTable() throws IOException {
+        LSMDao dao = new LSMDao(basePath);
+        for (int i = 0; i < 100; i++) {
+            dao.upsert(new TimestampEntry(segment(keyAt(i)), segment(valueAt(i)), i));
+        }
+        dao.upsert(new TimestampEntry(segment(keyAt(50)), null, 100));
+        dao.close();
+
+        dao = new LSMDao(basePath);
+        for (int i = 0; i < 100; i++) {
+            TimestampEntry entry = dao.get(segment(keyAt(i)));
+            if (i == 50) {
+                Assertions.assertNull(entry);
+            } else {
+                Assertions.assertEquals(valueAt(i), string(entry.value()));
+            }
+        }
+        Iterator<TimestampEntry> range = dao.get(segment(keyAt(49)), segment(keyAt(52)));
+        Assertions.assertEquals(keyAt(49), string(range.next().key()));
+        Assertions.assertEquals(keyAt(51), string(range.next().key()));
+        Assertions.assertFalse(range.hasNext());
+        dao.close();
+    }
+
+    private static void putLegacy(ByteBuffer buffer, String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        buffer.putLong(bytes.length).put(bytes);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip().get(bytes);
+        return bytes;
+    }
+
+    private static MemorySegment segment(String data) {
+        return MemorySegment.ofArray(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(MemorySegment segment) {
+        return new String(segment.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,112 @@
+package ru.mail.polis.stepanponomarev.sstable;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+import ru.mail.polis.stepanponomarev.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * Random lookups through EytzingerIndex against plain binary search over the whole index, which sstable did before.
+ * Keys are laid out off-heap like sstable does: fixed-width table of offsets and keys after it,
+ * so every read of a key goes through the index table into data. Not a test, run it by hand:
+ * {@code EytzingerIndexBenchmark [entries...]}
+ */
+public final class EytzingerIndexBenchmark {
+
+    private static final int LOOKUPS = 2_000_000;
+    private static final int ROUNDS = 5;
+
+    private EytzingerIndexBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[]{100_000, 1_000_000, 4_000_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("%10s %12s %14s %14s%n", "entries", "open ms", "binary ns/op", "eytzinger ns/op");
+        for (int size : sizes) {
+            try (ResourceScope scope = ResourceScope.newConfinedScope()) {
+                run(size, scope);
+            }
+        }
+    }
+
+    private static void run(int size, ResourceScope scope) {
+        MemorySegment[] keys = new MemorySegment[size];
+        long dataSize = 0;
+        for (int i = 0; i < size; i++) {
+            keys[i] = MemorySegment.ofArray(key(i * 2 + 1));
+            dataSize += Long.BYTES + keys[i].byteSize();
+        }
+        MemorySegment offsets = MemorySegment.allocateNative((long) Long.BYTES * size, scope);
+        MemorySegment data = MemorySegment.allocateNative(dataSize, scope);
+        long offset = 0;
+        for (int i = 0; i < size; i++) {
+            MemoryAccess.setLongAtIndex(offsets, i, offset);
+            MemoryAccess.setLongAtOffset(data, offset, keys[i].byteSize());
+            data.asSlice(offset + Long.BYTES, keys[i].byteSize()).copyFrom(keys[i]);
+            offset += Long.BYTES + keys[i].byteSize();
+        }
+        IntFunction<MemorySegment> keyAt = index -> {
+            long keyOffset = MemoryAccess.getLongAtIndex(offsets, index);
+            return data.asSlice(keyOffset + Long.BYTES, MemoryAccess.getLongAtOffset(data, keyOffset));
+        };
+
+        MemorySegment[] probes = new MemorySegment[LOOKUPS];
+        Random random = new Random(size);
+        for (int i = 0; i < LOOKUPS; i++) {
+            probes[i] = MemorySegment.ofArray(key(random.nextInt(size * 2)));
+        }
+
+        long openStart = System.nanoTime();
+        EytzingerIndex index = new EytzingerIndex(size, keyAt);
+        long openNanos = System.nanoTime() - openStart;
+
+        long binary = Long.MAX_VALUE;
+        long eytzinger = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (MemorySegment probe : probes) {
+                checksum += binarySearch(keyAt, size, probe);
+            }
+            binary = Math.min(binary, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (MemorySegment probe : probes) {
+                checksum -= index.lowerBound(probe);
+            }
+            eytzinger = Math.min(eytzinger, System.nanoTime() - start);
+        }
+        if (checksum != 0) {
+            throw new IllegalStateException("Searches disagree");
+        }
+
+        System.out.printf("%10d %12.1f %14.1f %14.1f%n", size, openNanos / 1e6,
+                (double) binary / LOOKUPS, (double) eytzinger / LOOKUPS);
+    }
+
+    private static int binarySearch(IntFunction<MemorySegment> keyAt, int size, MemorySegment key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Utils.compare(keyAt.apply(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static byte[] key(int index) {
+        return String.format("key%010d", index).getBytes(StandardCharsets.UTF_8);
+    }
+}
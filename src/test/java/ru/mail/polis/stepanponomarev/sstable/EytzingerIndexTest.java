@@ -0,0 +1,83 @@
+package ru.mail.polis.stepanponomarev.sstable;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.stepanponomarev.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class EytzingerIndexTest extends BaseTest {
+
+    @Test
+    void lowerBoundAgreesWithBinarySearch() {
+        int[] sizes = {0, 1, 2, EytzingerIndex.BLOCK_SIZE - 1, EytzingerIndex.BLOCK_SIZE,
+                EytzingerIndex.BLOCK_SIZE + 1, EytzingerIndex.BLOCK_SIZE * 3, 1000};
+        for (int size : sizes) {
+            List<MemorySegment> keys = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                keys.add(segment(keyAt(i * 2 + 1)));
+            }
+            EytzingerIndex index = new EytzingerIndex(size, keys::get);
+
+            // odd ordinals are present, even ones fall between them, and both bounds are crossed
+            for (int i = -1; i <= size * 2 + 1; i++) {
+                MemorySegment key = segment(keyAt(Math.max(i, 0)));
+                Assertions.assertEquals(binarySearch(keys, key), index.lowerBound(key), "size " + size + " key " + i);
+            }
+            Assertions.assertEquals(0, index.lowerBound(segment("a")));
+            Assertions.assertEquals(size, index.lowerBound(segment("z")));
+        }
+    }
+
+    @Test
+    void keysOfDifferentLength() {
+        Random random = new Random(1);
+        List<MemorySegment> generated = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            byte[] key = new byte[1 + random.nextInt(20)];
+            random.nextBytes(key);
+            generated.add(MemorySegment.ofArray(key));
+        }
+        generated.sort(Utils::compare);
+        List<MemorySegment> keys = new ArrayList<>();
+        for (MemorySegment key : generated) {
+            if (keys.isEmpty() || Utils.compare(keys.get(keys.size() - 1), key) != 0) {
+                keys.add(key);
+            }
+        }
+        EytzingerIndex index = new EytzingerIndex(keys.size(), keys::get);
+
+        for (int i = 0; i < 5000; i++) {
+            byte[] probe = new byte[1 + random.nextInt(20)];
+            random.nextBytes(probe);
+            MemorySegment key = MemorySegment.ofArray(probe);
+            Assertions.assertEquals(binarySearch(keys, key), index.lowerBound(key));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            Assertions.assertEquals(i, index.lowerBound(keys.get(i)));
+        }
+    }
+
+    private static int binarySearch(List<MemorySegment> keys, MemorySegment key) {
+        int low = 0;
+        int high = keys.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Utils.compare(keys.get(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static MemorySegment segment(String data) {
+        return MemorySegment.ofArray(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,157 @@
+package ru.mail.polis.vladislavfetisov;
+
+import jdk.incubator.foreign.MemorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.BaseEntry;
+import ru.mail.polis.BaseTest;
+import ru.mail.polis.Config;
+import ru.mail.polis.Entry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+@Timeout(10)
+public class SSTableVersionTest extends BaseTest {
+
+    @TempDir
+    Path basePath;
+
+    @Test
+    void legacyTable() throws IOException {
+        // lengths are 8-byte longs and index has no header
+        ByteBuffer table = ByteBuffer.allocate(1024).order(ByteOrder.nativeOrder());
+        ByteBuffer index = ByteBuffer.allocate(1024).order(ByteOrder.nativeOrder());
+        index.putLong(table.position());
+        putLegacy(table, "k1");
+        putLegacy(table, "v1");
+        index.putLong(table.position());
+        putLegacy(table, "k2");
+        table.putLong(SSTable.NULL_VALUE);
+        index.putLong(table.position());
+        putLegacy(table, "k3");
+        putLegacy(table, "v3");
+        Files.write(basePath.resolve("0"), bytes(table));
+        Files.write(basePath.resolve("0" + SSTable.INDEX), bytes(index));
+
+        LsmDao dao = new LsmDao(new Config(basePath, 1 << 20));
+        Assertions.assertEquals("v1", string(dao.get(segment("k1")).value()));
+        Assertions.assertNull(dao.get(segment("k2")));
+        Iterator<Entry<MemorySegment>> all = dao.all();
+        Assertions.assertEquals("k1", string(all.next().key()));
+        Assertions.assertEquals("k3", string(all.next().key()));
+        Assertions.assertFalse(all.hasNext());
+        dao.close();
+    }
+
+    // keys with bytes >= 0x80 were sorted as signed, the table is merged with memory in unsigned order
+    @Test
+    void legacyTableInSignedOrder() throws IOException {
+        List<byte[]> keys = new ArrayList<>();
+        for (int b : new int[] {0x00, 0x01, 0x7F, 0x80, 0x90, 0xFF}) {
+            keys.add(new byte[] {'k', (byte) b});
+            keys.add(new byte[] {'k', (byte) 0x80, (byte) b});
+        }
+        keys.sort(Arrays::compare);
+
+        ByteBuffer table = ByteBuffer.allocate(1024).order(ByteOrder.nativeOrder());
+        ByteBuffer index = ByteBuffer.allocate(1024).order(ByteOrder.nativeOrder());
+        for (byte[] key : keys) {
+            index.putLong(table.position());
+            table.putLong(key.length).put(key);
+            putLegacy(table, "v1");
+        }
+        Files.write(basePath.resolve("0"), bytes(table));
+        Files.write(basePath.resolve("0" + SSTable.INDEX), bytes(index));
+
+        Config config = new Config(basePath, 1 << 20);
+        LsmDao dao = new LsmDao(config);
+        ByteBuffer migrated = ByteBuffer.wrap(Files.readAllBytes(basePath.resolve("0" + SSTable.INDEX)));
+        Assertions.assertEquals(SSTable.MIGRATED_LEGACY_VERSION, migrated.order(ByteOrder.nativeOrder()).getLong(0));
+        dao.upsert(new BaseEntry<>(MemorySegment.ofArray(new byte[] {'k', 0x01}), segment("v2")));
+        dao.upsert(new BaseEntry<>(MemorySegment.ofArray(new byte[] {'k', (byte) 0x80, 0x40}), segment("v2")));
+        dao.upsert(new BaseEntry<>(MemorySegment.ofArray(new byte[] {'k', (byte) 0xFF}), null));
+        assertUnsignedOrder(dao);
+        dao.flush();
+        assertUnsignedOrder(dao);
+        dao.close();
+
+        dao = new LsmDao(config);
+        assertUnsignedOrder(dao);
+        dao.compact();
+        assertUnsignedOrder(dao);
+        dao.close();
+    }
+
+    private static void assertUnsignedOrder(LsmDao dao) throws IOException {
+        Iterator<Entry<MemorySegment>> all = dao.all();
+        byte[] previous = null;
+        int count = 0;
+        while (all.hasNext()) {
+            Entry<MemorySegment> entry = all.next();
+            byte[] key = entry.key().toByteArray();
+            Assertions.assertTrue(previous == null || Arrays.compareUnsigned(previous, key) < 0);
+            Assertions.assertEquals(string(entry.value()), string(dao.get(entry.key()).value()));
+            previous = key;
+            count++;
+        }
+        // 12 keys of legacy table and 1 new, 1 is deleted
+        Assertions.assertEquals(12, count);
+        Assertions.assertEquals("v2", string(dao.get(MemorySegment.ofArray(new byte[] {'k', 0x01})).value()));
+        Assertions.assertEquals("v1", string(dao.get(MemorySegment.ofArray(new byte[] {'k', (byte) 0x90})).value()));
+        Assertions.assertNull(dao.get(MemorySegment.ofArray(new byte[] {'k', (byte) 0xFF})));
+    }
+
+    @Test
+    void currentTable() throws IOException {
+        LsmDao dao = new LsmDao(new Config(basePath, 1 << 20));
+        for (int i = 0; i < 100; i++) {
+            dao.upsert(new BaseEntry<>(segment(keyAt(i)), segment(valueAt(i))));
+        }
+        dao.upsert(new BaseEntry<>(segment(keyAt(50)), null));
+        dao.close();
+
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(basePath.resolve("0" + SSTable.INDEX)));
+        Assertions.assertEquals(SSTable.VERSION, index.order(ByteOrder.nativeOrder()).getLong(0));
+
+        dao = new LsmDao(new Config(basePath, 1 << 20));
+        for (int i = 0; i < 100; i++) {
+            Entry<MemorySegment> entry = dao.get(segment(keyAt(i)));
+            if (i == 50) {
+                Assertions.assertNull(entry);
+            } else {
+                Assertions.assertEquals(valueAt(i), string(entry.value()));
+            }
+        }
+        dao.close();
+    }
+
+    private static void putLegacy(ByteBuffer buffer, String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+        buffer.putLong(bytes.length).put(bytes);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip().get(bytes);
+        return bytes;
+    }
+
+    private static MemorySegment segment(String data) {
+        return MemorySegment.ofArray(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(MemorySegment segment) {
+        return new String(segment.toByteArray(), StandardCharsets.UTF_8);
+    }
+}